@@ -1,201 +1,358 @@
-import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.function.IntConsumer;
 
 /**
- * This class implements the <b> Best Fit </b> scheduling algorithm.
+ * This class implements the <b> Best Fit </b> scheduling algorithm. In batch
+ * mode, the jobs of a batch are placed jointly by matching them to servers
+ * with the least total cost.
  */
-public class BFScheduler extends Scheduler {
+public class BFScheduler implements SchedulingPolicy {
     // Information of the current job
-    String jobID = "";
+    int jobID = 0;
     int requiredCore = 0;
     int requiredMemory = 0;
     int requiredDisk = 0;
 
-    // Information of the best readily available server
-    protected String bestReadilyAvailableServerType = "";
-    protected String bestReadilyAvailableServerID = "";
+    // Index of the best readily available server in cluster, and its cores
+    protected int bestReadilyAvailableServer = -1;
     protected int bestReadilyAvailableServerCore = 0;
 
-    // Information of the best sufficient server regardless of availability
-    protected String bestSufficientServerType = "";
-    protected String bestSufficientServerID = "";
+    // Index of the best sufficient server regardless of availability
+    protected int bestSufficientServer = -1;
 
-    // Because booting servers do not show the scorrect number of available
-    // resources after GETS Capable call, we need to use LSTJ for them.
-    // Therefore, we need to store the available servers and check them later
-    protected ArrayList<String[]> availableServers;
+    // Cost of a server that cannot run a job immediately, above the cost of
+    // any server that can
+    protected static final long WAITING_COST = 1L << 20;
 
-    // Initial resources of the servers
-    protected TreeMap<String, Integer[]> serverInitialResources;
+    // Resources each server has left for the jobs of a batch, the jobs of the
+    // batch yet to be placed, the servers they are matched with and the cost
+    // of each job and server
+    protected int[] batchCores = new int[0];
+    protected int[] batchMemory = new int[0];
+    protected int[] batchDisks = new int[0];
+    protected int[] unplacedJobs = new int[0];
+    protected int[] columns = new int[0];
+    protected int[] rowColumns = new int[0];
+    protected long[] costs = new long[0];
+    protected Matching matching = new Matching();
 
-    public BFScheduler() throws Exception {
-        super();
-        availableServers = new ArrayList<>();
-        serverInitialResources = new TreeMap<>();
+    // Options of the run, and the candidate servers of the current job
+    protected PolicyContext context = new PolicyContext();
+
+    // Reusable list of the jobs of a server
+    protected JobList jobs = new JobList();
+
+    @Override
+    public void setContext(PolicyContext context) {
+        this.context = context;
     }
 
     /**
-     * Schedules jobs based on the <b> Best Fit </b> algorithm
+     * Places a job based on the <b> Best Fit </b> algorithm
      */
     @Override
-    public void schedule() throws Exception {
-        // Start communication
-        send("HELO");
-        receive();
-        send("AUTH " + System.getProperty("user.name"));
-        receive();
-
-        do {
-            send("REDY");
-            receive();
-
-            // Ignore if receive a message other than JOBN
-            if (!latestMessage[0].equals("JOBN")) {
-                continue;
+    public int place(Job job, ClusterView cluster) throws Exception {
+        // Scan job information
+        jobID = job.getID();
+        requiredCore = job.getCores();
+        requiredMemory = job.getMemory();
+        requiredDisk = job.getDisk();
+
+        // The records of cluster are the capable servers
+        int serverCount = cluster.getRecordCount();
+
+        // First server in the list has the least number of cores
+        // therefore it is the best-fit sufficient server
+        if (serverCount > 0) {
+            bestSufficientServer = cluster.getRecord(0);
+        }
+
+        // Find best-fit readily available server. With the shadow state, it is
+        // found with the capacity index of cluster instead of scanning the servers.
+        if (context.useCapacityIndex()) {
+            bestReadilyAvailableServer = cluster.findBestFit(requiredCore, requiredMemory, requiredDisk);
+        } else {
+            findBestFitServer(cluster);
+        }
+
+        // Schedule job
+        // If there is no readily available, schedule to the best sufficient server
+        int server = bestReadilyAvailableServer >= 0 ? bestReadilyAvailableServer : bestSufficientServer;
+        reset();
+        return server;
+    }
+
+    @Override
+    public boolean placesBatches() {
+        return true;
+    }
+
+    /**
+     * Lists the jobs of the booting servers, whose resources are calculated
+     * from the jobs waiting for them
+     */
+    @Override
+    public void selectBatchJobLists(JobList batch, ClusterView cluster, IntConsumer servers) {
+        for (int server = 0; server < cluster.getServerCount(); server++) {
+            if (cluster.getState(server) == Cluster.BOOTING) {
+                servers.accept(server);
             }
+        }
+    }
 
-            // Scan job information
-            jobID = latestMessage[2];
-            requiredCore = Integer.parseInt(latestMessage[4]);
-            requiredMemory = Integer.parseInt(latestMessage[5]);
-            requiredDisk = Integer.parseInt(latestMessage[6]);
-
-            // Get capable server records
-            send("GETS Capable " + requiredCore + " " + requiredMemory + " " + requiredDisk);
-            receive();
-            send("OK");
-
-            // Traverse all server records
-            int serverCount = Integer.parseInt(latestMessage[1]);
-            for (int i = 0; i < serverCount; i++) {
-                receive();
-
-                // Current resources of the server
-                int availableCore = Integer.parseInt(latestMessage[4]);
-                int availableMemory = Integer.parseInt(latestMessage[5]);
-                int availableDisk = Integer.parseInt(latestMessage[6]);
-
-                // GETS Capable is not guaranteed to return the intial cores of the servers at
-                // every iteration, so we have to store them before assigning these servers any
-                // job.
-                if (!serverInitialResources.containsKey(latestMessage[0])) {
-                    serverInitialResources.put(latestMessage[0],
-                            new Integer[] { availableCore, availableMemory, availableDisk });
+    /**
+     * Places the jobs of a batch jointly. In rounds, the jobs yet to be placed
+     * are matched to distinct servers with the least total cost, where the
+     * cost of a server is the cores it would have left, as in Best Fit, or a
+     * higher cost if it cannot run the job immediately. The resources of the
+     * matched servers are then reduced, so later rounds can pack more jobs on
+     * them. Unlike placing the jobs one by one, a job does not take the only
+     * server another job of the batch fits in.
+     */
+    @Override
+    public void placeBatch(JobList batch, ClusterView cluster, int[] servers) throws Exception {
+        int jobCount = batch.size();
+        int serverCount = cluster.getServerCount();
+        if (batchCores.length < serverCount) {
+            batchCores = new int[serverCount];
+            batchMemory = new int[serverCount];
+            batchDisks = new int[serverCount];
+            columns = new int[serverCount];
+        }
+        if (unplacedJobs.length < jobCount) {
+            unplacedJobs = new int[jobCount];
+            rowColumns = new int[jobCount];
+        }
+
+        // Current resources of the servers. Booting servers do not show them
+        // correctly, so they are calculated from the jobs waiting for them.
+        for (int server = 0; server < serverCount; server++) {
+            batchCores[server] = cluster.getCores(server);
+            batchMemory[server] = cluster.getMemory(server);
+            batchDisks[server] = cluster.getDisk(server);
+            if (cluster.getState(server) == Cluster.BOOTING) {
+                batchCores[server] = cluster.getInitialCores(server);
+                batchMemory[server] = cluster.getInitialMemory(server);
+                batchDisks[server] = cluster.getInitialDisk(server);
+                cluster.getJobs(server, jobs);
+                for (int j = 0; j < jobs.size(); j++) {
+                    batchCores[server] -= jobs.getCores(j);
+                    batchMemory[server] -= jobs.getMemory(j);
+                    batchDisks[server] -= jobs.getDisk(j);
                 }
+            }
+        }
 
-                // First server in the list has the least number of cores
-                // therefore it is the best-fit sufficient server
-                if (i == 0) {
-                    bestSufficientServerType = latestMessage[0];
-                    bestSufficientServerID = latestMessage[1];
+        // Jobs without capable servers are left to place()
+        int unplacedCount = 0;
+        for (int i = 0; i < jobCount; i++) {
+            servers[i] = -1;
+            for (int server = 0; server < serverCount; server++) {
+                if (isCapable(batch, i, server, cluster)) {
+                    unplacedJobs[unplacedCount++] = i;
+                    break;
                 }
+            }
+        }
 
-                // Store available servers for later check
-                if (availableCore >= requiredCore
-                        && availableMemory >= requiredMemory
-                        && availableDisk >= requiredDisk) {
-                    availableServers.add(latestMessage);
+        while (unplacedCount > 0) {
+            // The columns are the servers capable of any job yet to be placed,
+            // and the rows are as many of the jobs as there are columns
+            int columnCount = 0;
+            for (int server = 0; server < serverCount; server++) {
+                for (int r = 0; r < unplacedCount; r++) {
+                    if (isCapable(batch, unplacedJobs[r], server, cluster)) {
+                        columns[columnCount++] = server;
+                        break;
+                    }
+                }
+            }
+            int rowCount = Math.min(unplacedCount, columnCount);
+            if (costs.length < rowCount * columnCount) {
+                costs = new long[rowCount * columnCount];
+            }
+            for (int r = 0; r < rowCount; r++) {
+                for (int c = 0; c < columnCount; c++) {
+                    costs[r * columnCount + c] = getBatchCost(batch, unplacedJobs[r], columns[c], cluster);
                 }
             }
+            matching.solve(costs, rowCount, columnCount, rowColumns);
 
-            // Finish receiving server records
-            send("OK");
-            receive();
+            // Place the jobs matched with servers that can run them immediately
+            for (int r = 0; r < rowCount; r++) {
+                int i = unplacedJobs[r];
+                int server = columns[rowColumns[r]];
+                if (costs[r * columnCount + rowColumns[r]] < WAITING_COST) {
+                    servers[i] = server;
+                    batchCores[server] -= batch.getCores(i);
+                    batchMemory[server] -= batch.getMemory(i);
+                    batchDisks[server] -= batch.getDisk(i);
+                }
+            }
 
-            // Find best-fit readily available server
-            findBestFitServer();
+            // A job matched with a server it has to wait for is placed there
+            // only if no server is left that can run it immediately, otherwise
+            // it is kept for the next round with the unmatched jobs
+            int nextCount = 0;
+            for (int r = 0; r < unplacedCount; r++) {
+                int i = unplacedJobs[r];
+                if (servers[i] >= 0) {
+                    continue;
+                }
+                if (r < rowCount && costs[r * columnCount + rowColumns[r]] < Matching.INFEASIBLE
+                        && !hasReadyServer(batch, i, columnCount)) {
+                    servers[i] = columns[rowColumns[r]];
+                    continue;
+                }
+                unplacedJobs[nextCount++] = i;
+            }
+            unplacedCount = nextCount;
+        }
+    }
 
-            // Schedule job
-            if (!bestReadilyAvailableServerType.equals("")) {
-                // If there is a readily available server, schedule to it
-                send("SCHD " + jobID + " " + bestReadilyAvailableServerType + " " + bestReadilyAvailableServerID);
-            } else {
-                // If there is no readily available, schedule to the best sufficient server
-                send("SCHD " + jobID + " " + bestSufficientServerType + " " + bestSufficientServerID);
+    /**
+     * Returns whether any of the columns can run a job of a batch immediately
+     * with the resources left for the batch
+     */
+    protected boolean hasReadyServer(JobList batch, int i, int columnCount) {
+        for (int c = 0; c < columnCount; c++) {
+            int server = columns[c];
+            if (batchCores[server] >= batch.getCores(i) && batchMemory[server] >= batch.getMemory(i)
+                    && batchDisks[server] >= batch.getDisk(i)) {
+                return true;
             }
-            receive();
-            reset();
-        } while (!latestMessage[0].equals("NONE"));
-
-        // End communication
-        send("QUIT");
-        receive();
-        close();
+        }
+        return false;
     }
 
     /**
-     * Finds the best fit server in readily available servers,
-     * i.e. <code> availableServers </code>
+     * Returns whether a server is available and its initial resources are
+     * sufficient for a job of a batch
      */
-    protected void findBestFitServer() throws Exception {
-        for (String[] server : availableServers) {
-            String serverType = server[0];
-            String serverID = server[1];
-            String serverState = server[2];
-
-            int availableCore;
-            int availableMemory;
-            int availableDisk;
-
-            if (serverState.equals("booting")) {
-                // If the server is booting, recalculate its resources by subtracting the
-                // required resources of waiting jobs from the server's initial resources
-                Integer[] initialResources = serverInitialResources.get(serverType);
-                availableCore = initialResources[0];
-                availableMemory = initialResources[1];
-                availableDisk = initialResources[2];
-
-                // Traverse job records
-                send("LSTJ " + serverType + " " + serverID);
-                receive();
-                send("OK");
-
-                int jobCount = Integer.parseInt(latestMessage[1]);
-                for (int i = 0; i < jobCount; i++) {
-                    receive();
-                    int _requiredCore = Integer.parseInt(latestMessage[5]);
-                    int _requiredMemory = Integer.parseInt(latestMessage[6]);
-                    int _requiredDisk = Integer.parseInt(latestMessage[7]);
-
-                    availableCore -= _requiredCore;
-                    availableMemory -= _requiredMemory;
-                    availableDisk -= _requiredDisk;
-                }
+    protected boolean isCapable(JobList batch, int i, int server, ClusterView cluster) {
+        return cluster.getState(server) != Cluster.UNAVAILABLE
+                && cluster.getInitialCores(server) >= batch.getCores(i)
+                && cluster.getInitialMemory(server) >= batch.getMemory(i)
+                && cluster.getInitialDisk(server) >= batch.getDisk(i);
+    }
+
+    /**
+     * Returns the cost of placing a job of a batch on a server: the cores left
+     * if the server can run it immediately, WAITING_COST plus its initial cores
+     * if the job has to wait, or Matching.INFEASIBLE if it is not capable
+     */
+    protected long getBatchCost(JobList batch, int i, int server, ClusterView cluster) {
+        if (!isCapable(batch, i, server, cluster)) {
+            return Matching.INFEASIBLE;
+        }
+        if (batchCores[server] >= batch.getCores(i) && batchMemory[server] >= batch.getMemory(i)
+                && batchDisks[server] >= batch.getDisk(i)) {
+            return batchCores[server] - batch.getCores(i);
+        }
+        return WAITING_COST + cluster.getInitialCores(server);
+    }
 
-                // Finish receiving job records
-                send("OK");
-                receive();
-            } else {
-                // Else use the stored values
-                availableCore = Integer.parseInt(server[4]);
-                availableMemory = Integer.parseInt(server[5]);
-                availableDisk = Integer.parseInt(server[6]);
+    /**
+     * Lists the jobs of the booting servers whose resources seem sufficient,
+     * as booting servers do not show the resources taken by their jobs
+     */
+    @Override
+    public void selectJobLists(Job job, ClusterView cluster, IntConsumer servers) {
+        if (context.useCapacityIndex()) {
+            return;
+        }
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
+            if (cluster.getState(server) == Cluster.BOOTING && cluster.getCores(server) >= job.getCores()
+                    && cluster.getMemory(server) >= job.getMemory() && cluster.getDisk(server) >= job.getDisk()) {
+                servers.accept(server);
             }
+        }
+    }
 
-            // Check for best-fit
-            if (availableCore >= requiredCore && availableMemory >= requiredMemory && availableDisk >= requiredDisk) {
-                if (availableCore < bestReadilyAvailableServerCore || bestReadilyAvailableServerCore == 0) {
-                    bestReadilyAvailableServerType = serverType;
-                    bestReadilyAvailableServerID = serverID;
-                    bestReadilyAvailableServerCore = availableCore;
-                }
+    /**
+     * Finds the best fit server in readily available servers, i.e. capable
+     * servers whose current resources are sufficient for the job
+     */
+    protected void findBestFitServer(ClusterView cluster) {
+        context.clearCandidates();
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
+
+            // Skip servers that are not readily available
+            if (cluster.getCores(server) < requiredCore
+                    || cluster.getMemory(server) < requiredMemory
+                    || cluster.getDisk(server) < requiredDisk) {
+                continue;
+            }
+
+            context.addCandidate(server);
+        }
+
+        context.scoreCandidates(candidate -> getAvailableCore(candidate, cluster));
+
+        // Check for best-fit in the order of the records
+        for (int i = 0; i < context.getCandidateCount(); i++) {
+            int availableCore = context.getScore(i);
+            if (availableCore < 0) {
+                continue;
+            }
+
+            if (availableCore < bestReadilyAvailableServerCore || bestReadilyAvailableServerCore == 0) {
+                bestReadilyAvailableServer = context.getCandidate(i);
+                bestReadilyAvailableServerCore = availableCore;
+            }
+        }
+    }
+
+    /**
+     * Returns the cores a candidate has available for the current job, or -1
+     * if its resources are not sufficient
+     *
+     * @param candidate index of the candidate
+     * @param cluster   the servers
+     */
+    protected int getAvailableCore(int candidate, ClusterView cluster) {
+        int server = context.getCandidate(candidate);
+
+        // Current resources of the server
+        int availableCore = cluster.getCores(server);
+        int availableMemory = cluster.getMemory(server);
+        int availableDisk = cluster.getDisk(server);
+
+        if (cluster.getState(server) == Cluster.BOOTING) {
+            // If the server is booting, recalculate its resources by subtracting the
+            // required resources of waiting jobs from the server's initial resources
+            availableCore = cluster.getInitialCores(server);
+            availableMemory = cluster.getInitialMemory(server);
+            availableDisk = cluster.getInitialDisk(server);
+
+            // Traverse job records, which are listed with LSTJ because booting
+            // servers do not show the correct number of available resources
+            JobList jobs = context.getCandidateJobs(candidate);
+            cluster.getJobs(server, jobs);
+            for (int j = 0; j < jobs.size(); j++) {
+                availableCore -= jobs.getCores(j);
+                availableMemory -= jobs.getMemory(j);
+                availableDisk -= jobs.getDisk(j);
             }
         }
+
+        if (availableCore < requiredCore || availableMemory < requiredMemory || availableDisk < requiredDisk) {
+            return -1;
+        }
+        return availableCore;
     }
 
     /**
      * Reset the scheduling information for the next job
      */
     protected void reset() {
-        jobID = "";
+        jobID = 0;
         requiredCore = 0;
         requiredMemory = 0;
         requiredDisk = 0;
-        bestReadilyAvailableServerType = "";
-        bestReadilyAvailableServerID = "";
+        bestReadilyAvailableServer = -1;
         bestReadilyAvailableServerCore = 0;
-        bestSufficientServerType = "";
-        bestSufficientServerID = "";
-        availableServers.clear();
+        bestSufficientServer = -1;
     }
 }
@@ -0,0 +1,85 @@
+/**
+ * <p>
+ * This class measures the decision latency of scheduling algorithms by
+ * replaying recorded sessions, without ds-server. Only the decisions, i.e.
+ * calls of SchedulingPolicy.place() and placeBatch(), are measured. The GETS
+ * and LSTJ queries they need are made before each decision and answered from
+ * the recording.
+ * </p>
+ *
+ * <p>
+ * A session is recorded by running the client with the ds.record property,
+ * and must be replayed with the same algorithm and modes, or the replay fails
+ * at the first message that differs, e.g:
+ * </p>
+ * <code>
+ * $ java -Dds.record=lwt.rec Client lwt
+ * $ java Benchmark -w 5 -i 10 lwt lwt.rec bf bf.rec
+ * </code>
+ *
+ * <p>
+ * For each algorithm, the session is replayed -w times to warm up and -i
+ * times to measure, and the average time and allocated bytes per decision are
+ * printed.
+ * </p>
+ */
+public class Benchmark {
+    public static void main(String[] args) throws Exception {
+        int warmupIterations = 5;
+        int iterations = 10;
+
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            if (args[i].equals("-w")) {
+                warmupIterations = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-i")) {
+                iterations = Integer.parseInt(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i += 2;
+        }
+        if (i == args.length || (args.length - i) % 2 != 0) {
+            System.err.println("Usage: java Benchmark [-w WARMUPS] [-i ITERATIONS] ALGORITHM RECORDING...");
+            System.exit(1);
+        }
+
+        System.out.printf("%-10s %12s %14s %14s%n", "algorithm", "decisions", "ns/op", "bytes/op");
+        for (; i < args.length; i += 2) {
+            String algorithm = args[i];
+            SessionLog recording = SessionLog.load(args[i + 1]);
+
+            for (int j = 0; j < warmupIterations; j++) {
+                replay(algorithm, recording);
+            }
+
+            long decisions = 0;
+            double nanos = 0;
+            double bytes = 0;
+            for (int j = 0; j < iterations; j++) {
+                TimedPolicy timedPolicy = replay(algorithm, recording);
+                decisions += timedPolicy.getDecisions();
+                nanos += timedPolicy.getNanosPerDecision() * timedPolicy.getDecisions();
+                bytes += timedPolicy.getBytesPerDecision() * timedPolicy.getDecisions();
+            }
+
+            // Allocated bytes are printed as -1 if they are not measured
+            System.out.printf("%-10s %12d %14.1f %14.1f%n", algorithm, decisions / Math.max(iterations, 1),
+                    decisions > 0 ? nanos / decisions : 0, decisions > 0 && bytes >= 0 ? bytes / decisions : -1);
+        }
+    }
+
+    /**
+     * Replays a recorded session with a new scheduler of an algorithm
+     *
+     * @return the measurements of its decisions
+     */
+    protected static TimedPolicy replay(String algorithm, SessionLog recording) throws Exception {
+        Scheduler scheduler = Client.createScheduler(algorithm);
+        TimedPolicy timedPolicy = new TimedPolicy(scheduler.getPolicy());
+        scheduler.setPolicy(timedPolicy);
+        scheduler.setTransport(new ReplayTransport(recording));
+        scheduler.schedule();
+        return timedPolicy;
+    }
+}
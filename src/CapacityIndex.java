@@ -0,0 +1,142 @@
+import java.util.Arrays;
+
+/**
+ * <p>
+ * This class indexes the available resources of servers in a segment tree over
+ * their indices, so that first-fit, best-fit and worst-fit servers are found
+ * without scanning every server. Each node keeps the largest cores, memory
+ * and disk of the servers below it, and the smallest cores, and searches skip
+ * the nodes that cannot hold the result.
+ * </p>
+ *
+ * <p>
+ * Ties are broken by the lowest index, i.e. the order of GETS All, like the
+ * scans of the records of GETS Capable. A search visits O(log n) nodes when the
+ * largest resources of a node belong to the same server. Otherwise, it may
+ * visit more nodes before finding a server where all of them fit.
+ * </p>
+ */
+public class CapacityIndex {
+    // Number of leaves, a power of two. The leaf of server i is node size + i.
+    protected int size;
+    protected int[] maxCores;
+    protected int[] maxMemory;
+    protected int[] maxDisks;
+    protected int[] minCores;
+
+    // Best server and its cores found by the current search
+    protected int found;
+    protected int foundCores;
+
+    public CapacityIndex(int capacity) {
+        size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        maxCores = new int[2 * size];
+        maxMemory = new int[2 * size];
+        maxDisks = new int[2 * size];
+        minCores = new int[2 * size];
+        Arrays.fill(maxCores, -1);
+        Arrays.fill(maxMemory, -1);
+        Arrays.fill(maxDisks, -1);
+        Arrays.fill(minCores, Integer.MAX_VALUE);
+    }
+
+    public int capacity() {
+        return size;
+    }
+
+    /**
+     * Sets the available resources of a server
+     */
+    public void update(int server, int core, int mem, int disk) {
+        int node = size + server;
+        maxCores[node] = core;
+        maxMemory[node] = mem;
+        maxDisks[node] = disk;
+        minCores[node] = core;
+        for (node >>= 1; node > 0; node >>= 1) {
+            int left = 2 * node;
+            int right = left + 1;
+            maxCores[node] = Math.max(maxCores[left], maxCores[right]);
+            maxMemory[node] = Math.max(maxMemory[left], maxMemory[right]);
+            maxDisks[node] = Math.max(maxDisks[left], maxDisks[right]);
+            minCores[node] = Math.min(minCores[left], minCores[right]);
+        }
+    }
+
+    /**
+     * Returns the first server whose resources are sufficient, or -1
+     */
+    public int findFirstFit(int core, int mem, int disk) {
+        return findFirstFit(1, core, mem, disk);
+    }
+
+    protected int findFirstFit(int node, int core, int mem, int disk) {
+        if (maxCores[node] < core || maxMemory[node] < mem || maxDisks[node] < disk) {
+            return -1;
+        }
+        if (node >= size) {
+            return node - size;
+        }
+        int server = findFirstFit(2 * node, core, mem, disk);
+        return server >= 0 ? server : findFirstFit(2 * node + 1, core, mem, disk);
+    }
+
+    /**
+     * Returns the server with the fewest cores among those whose resources are
+     * sufficient, or -1
+     */
+    public int findBestFit(int core, int mem, int disk) {
+        found = -1;
+        foundCores = Integer.MAX_VALUE;
+        findBestFit(1, core, mem, disk);
+        return found;
+    }
+
+    protected void findBestFit(int node, int core, int mem, int disk) {
+        if (maxCores[node] < core || maxMemory[node] < mem || maxDisks[node] < disk) {
+            return;
+        }
+
+        // Servers below cannot have fewer cores than the required or the
+        // smallest cores of the node, and a tie loses to the earlier server
+        if (Math.max(core, minCores[node]) >= foundCores) {
+            return;
+        }
+        if (node >= size) {
+            found = node - size;
+            foundCores = maxCores[node];
+            return;
+        }
+        findBestFit(2 * node, core, mem, disk);
+        findBestFit(2 * node + 1, core, mem, disk);
+    }
+
+    /**
+     * Returns the server with the most cores among those whose resources are
+     * sufficient, or -1
+     */
+    public int findWorstFit(int core, int mem, int disk) {
+        found = -1;
+        foundCores = -1;
+        findWorstFit(1, core, mem, disk);
+        return found;
+    }
+
+    protected void findWorstFit(int node, int core, int mem, int disk) {
+        if (maxCores[node] < core || maxMemory[node] < mem || maxDisks[node] < disk) {
+            return;
+        }
+
+        // A tie loses to the earlier server
+        if (maxCores[node] <= foundCores) {
+            return;
+        }
+        if (node >= size) {
+            found = node - size;
+            foundCores = maxCores[node];
+            return;
+        }
+        findWorstFit(2 * node, core, mem, disk);
+        findWorstFit(2 * node + 1, core, mem, disk);
+    }
+}
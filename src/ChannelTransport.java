@@ -0,0 +1,70 @@
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * This class is a transport built on a blocking SocketChannel with
+ * pre-allocated direct buffers. Messages are encoded into the write buffer
+ * character by character, so sending does not create any byte arrays, and
+ * received bytes are copied from the read buffer into the buffer of a Message
+ * without being decoded.
+ */
+public class ChannelTransport implements Transport {
+    protected SocketChannel channel;
+    protected ByteBuffer writeBuffer;
+    protected ByteBuffer readBuffer;
+
+    public ChannelTransport(String host, int port) throws Exception {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        writeBuffer = ByteBuffer.allocateDirect(8192);
+        readBuffer = ByteBuffer.allocateDirect(65536);
+        // Nothing has been received yet
+        readBuffer.flip();
+    }
+
+    @Override
+    public void write(String message) throws Exception {
+        int length = message.length();
+        for (int i = 0; i < length; i++) {
+            if (!writeBuffer.hasRemaining()) {
+                flush();
+            }
+            // Messages of ds-sim are ASCII
+            writeBuffer.put((byte) message.charAt(i));
+        }
+        if (!writeBuffer.hasRemaining()) {
+            flush();
+        }
+        writeBuffer.put((byte) '\n');
+    }
+
+    @Override
+    public void flush() throws Exception {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws Exception {
+        if (!readBuffer.hasRemaining()) {
+            readBuffer.clear();
+            int count = channel.read(readBuffer);
+            readBuffer.flip();
+            if (count < 0) {
+                return -1;
+            }
+        }
+        int count = Math.min(length, readBuffer.remaining());
+        readBuffer.get(buffer, offset, count);
+        return count;
+    }
+
+    @Override
+    public void close() throws Exception {
+        channel.close();
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.File;
+import java.util.Random;
+
+/**
+ * <p>
+ * This class checks the capacity index and the matching of batches against
+ * brute-force results, without ds-server:
+ * </p>
+ *
+ * <ul>
+ * <li>CapacityIndex is given random updates, and its first-fit, best-fit and
+ * worst-fit servers are compared with a scan of the resources after each.</li>
+ * <li>For each configuration file, a session of BF is run in shadow mode
+ * against an in-process server, and before every decision the servers found
+ * by Cluster after refreshCapacityIndex() are compared with a scan of its
+ * shadow state.</li>
+ * <li>Matching is given random cost matrices, some of whose costs are
+ * infeasible, and its total cost is compared with the least total cost over
+ * all assignments.</li>
+ * </ul>
+ *
+ * <code>
+ * $ java Check [-s SEED] [-n ROUNDS] [CONFIG FILE]...
+ * </code>
+ *
+ * <p>
+ * The first mismatch is printed and ends the check with exit status 1.
+ * </p>
+ */
+public class Check {
+    public static void main(String[] args) throws Exception {
+        long seed = 1;
+        int rounds = 10000;
+
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            if (args[i].equals("-s")) {
+                seed = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("-n")) {
+                rounds = Integer.parseInt(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+            i += 2;
+        }
+
+        Random random = new Random(seed);
+        System.out.println("CapacityIndex: " + checkCapacityIndex(random, rounds) + " searches");
+        System.out.println("Matching: " + checkMatching(random, rounds) + " assignments");
+        for (; i < args.length; i++) {
+            System.out.println("Cluster " + args[i] + ": " + checkCluster(new File(args[i])) + " decisions");
+        }
+    }
+
+    /**
+     * Updates capacity indices of random sizes with random resources, which
+     * are small so that ties are common, and checks every search after each
+     * update
+     *
+     * @return the number of searches checked
+     */
+    protected static long checkCapacityIndex(Random random, int rounds) {
+        long searches = 0;
+        CapacityIndex index = null;
+        int[][] resources = null;
+        for (int round = 0; round < rounds; round++) {
+            if (round % 100 == 0) {
+                int serverCount = 1 + random.nextInt(100);
+                index = new CapacityIndex(serverCount);
+                resources = new int[serverCount][];
+                for (int server = 0; server < serverCount; server++) {
+                    resources[server] = new int[] { random.nextInt(9), random.nextInt(9), random.nextInt(9) };
+                    index.update(server, resources[server][0], resources[server][1], resources[server][2]);
+                }
+            }
+
+            int server = random.nextInt(resources.length);
+            resources[server] = new int[] { random.nextInt(9), random.nextInt(9), random.nextInt(9) };
+            index.update(server, resources[server][0], resources[server][1], resources[server][2]);
+
+            int core = random.nextInt(9);
+            int mem = random.nextInt(9);
+            int disk = random.nextInt(9);
+            int[] expected = scan(resources, core, mem, disk);
+            int[] found = { index.findFirstFit(core, mem, disk), index.findBestFit(core, mem, disk),
+                    index.findWorstFit(core, mem, disk) };
+            compare("CapacityIndex", found, expected, core, mem, disk);
+            searches += 3;
+        }
+        return searches;
+    }
+
+    /**
+     * Runs a session of BF in shadow mode against an in-process server, and
+     * checks the searches of the capacity index of cluster before each
+     * decision
+     *
+     * @return the number of decisions checked
+     */
+    protected static long checkCluster(File configFile) throws Exception {
+        System.setProperty("ds.shadow", "true");
+        Scheduler scheduler = Client.createScheduler("bf");
+        TimedPolicy checkedPolicy = new TimedPolicy(scheduler.getPolicy()) {
+            @Override
+            public int place(Job job, ClusterView cluster) throws Exception {
+                int[][] resources = new int[cluster.getServerCount()][];
+                JobList jobs = new JobList();
+                for (int server = 0; server < resources.length; server++) {
+                    resources[server] = new int[] { cluster.getCores(server), cluster.getMemory(server),
+                            cluster.getDisk(server) };
+
+                    // Jobs queued on a booting server take its initial resources
+                    if (cluster.getState(server) == Cluster.BOOTING) {
+                        resources[server] = new int[] { cluster.getInitialCores(server),
+                                cluster.getInitialMemory(server), cluster.getInitialDisk(server) };
+                        cluster.getJobs(server, jobs);
+                        for (int i = 0; i < jobs.size(); i++) {
+                            resources[server][0] -= jobs.getCores(i);
+                            resources[server][1] -= jobs.getMemory(i);
+                            resources[server][2] -= jobs.getDisk(i);
+                        }
+                    }
+                }
+
+                int[] expected = scan(resources, job.getCores(), job.getMemory(), job.getDisk());
+                int[] found = { cluster.findFirstFit(job.getCores(), job.getMemory(), job.getDisk()),
+                        cluster.findBestFit(job.getCores(), job.getMemory(), job.getDisk()),
+                        cluster.findWorstFit(job.getCores(), job.getMemory(), job.getDisk()) };
+                compare("Cluster", found, expected, job.getCores(), job.getMemory(), job.getDisk());
+                return super.place(job, cluster);
+            }
+        };
+        scheduler.setPolicy(checkedPolicy);
+        scheduler.setTransport(new MemoryTransport(new MockServer(configFile)));
+        scheduler.schedule();
+        System.clearProperty("ds.shadow");
+        return checkedPolicy.getDecisions();
+    }
+
+    /**
+     * Solves random cost matrices of up to 6 rows, and checks that the rows
+     * are matched to distinct columns with the least total cost
+     *
+     * @return the number of assignments checked
+     */
+    protected static long checkMatching(Random random, int rounds) {
+        Matching matching = new Matching();
+        int[] rowColumns = new int[6];
+        for (int round = 0; round < rounds; round++) {
+            int rowCount = 1 + random.nextInt(6);
+            int columnCount = rowCount + random.nextInt(3);
+            long[] costs = new long[rowCount * columnCount];
+            for (int i = 0; i < costs.length; i++) {
+                costs[i] = random.nextInt(5) == 0 ? Matching.INFEASIBLE : random.nextInt(20);
+            }
+
+            matching.solve(costs, rowCount, columnCount, rowColumns);
+            long total = 0;
+            boolean[] used = new boolean[columnCount];
+            for (int row = 0; row < rowCount; row++) {
+                int column = rowColumns[row];
+                if (column < 0 || column >= columnCount || used[column]) {
+                    fail("Matching: row " + row + " is matched to column " + column);
+                }
+                used[column] = true;
+                total += costs[row * columnCount + column];
+            }
+
+            long expected = findLeastCost(costs, rowCount, columnCount, 0, new boolean[columnCount]);
+            if (total != expected) {
+                fail("Matching: total cost " + total + " instead of " + expected + " for " + rowCount + "x"
+                        + columnCount + " costs");
+            }
+        }
+        return rounds;
+    }
+
+    /**
+     * Returns the least total cost of matching the rows from a row on to the
+     * columns not used yet, trying every column for each row
+     */
+    protected static long findLeastCost(long[] costs, int rowCount, int columnCount, int row, boolean[] used) {
+        if (row == rowCount) {
+            return 0;
+        }
+        long leastCost = Long.MAX_VALUE;
+        for (int column = 0; column < columnCount; column++) {
+            if (used[column]) {
+                continue;
+            }
+            used[column] = true;
+            long cost = costs[row * columnCount + column] + findLeastCost(costs, rowCount, columnCount, row + 1, used);
+            used[column] = false;
+            leastCost = Math.min(leastCost, cost);
+        }
+        return leastCost;
+    }
+
+    /**
+     * Returns the first-fit, best-fit and worst-fit servers found by scanning
+     * the resources of every server, each -1 if no server fits. Ties are broken
+     * by the lowest index.
+     */
+    protected static int[] scan(int[][] resources, int core, int mem, int disk) {
+        int[] servers = { -1, -1, -1 };
+        for (int server = 0; server < resources.length; server++) {
+            int[] r = resources[server];
+            if (r[0] < core || r[1] < mem || r[2] < disk) {
+                continue;
+            }
+            if (servers[0] < 0) {
+                servers[0] = server;
+            }
+            if (servers[1] < 0 || r[0] < resources[servers[1]][0]) {
+                servers[1] = server;
+            }
+            if (servers[2] < 0 || r[0] > resources[servers[2]][0]) {
+                servers[2] = server;
+            }
+        }
+        return servers;
+    }
+
+    protected static void compare(String name, int[] found, int[] expected, int core, int mem, int disk) {
+        String[] searches = { "first fit", "best fit", "worst fit" };
+        for (int i = 0; i < found.length; i++) {
+            if (found[i] != expected[i]) {
+                fail(name + ": " + searches[i] + " of " + core + " " + mem + " " + disk + " is " + found[i]
+                        + " instead of " + expected[i]);
+            }
+        }
+    }
+
+    protected static void fail(String mismatch) {
+        System.out.println(mismatch);
+        System.exit(1);
+    }
+}
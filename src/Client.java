@@ -1,3 +1,5 @@
+import java.io.File;
+
 public class Client {
     // Scheduler algorithm
     Scheduler scheduler;
@@ -25,32 +27,123 @@ public class Client {
         scheduler = newScheduler;
     }
 
-    public static void main(String[] args) throws Exception {
-        Client dsClient;
-        Scheduler scheduler;
-
-        if (args[0].equalsIgnoreCase("lrr")) {
-            scheduler = new LRRScheduler();
-        } else if (args[0].equalsIgnoreCase("fc")) {
-            scheduler = new FCScheduler();
-        } else if (args[0].equalsIgnoreCase("ff")) {
-            scheduler = new FFScheduler();
-        } else if (args[0].equalsIgnoreCase("bf")) {
-            scheduler = new BFScheduler();
-        } else if (args[0].equalsIgnoreCase("wf")) {
-            scheduler = new WFScheduler();
-        } else if (args[0].equalsIgnoreCase("lwt")) {
-            scheduler = new LWTScheduler();
-        } else if (args[0].equalsIgnoreCase("iff")) {
-            scheduler = new IFFScheduler();
-        } else if (args[0].equalsIgnoreCase("ibf")) {
-            scheduler = new IBFScheduler();
-        } else if (args[0].equalsIgnoreCase("iwf")) {
-            scheduler = new IWFScheduler();
+    /**
+     * Creates the scheduler of an algorithm
+     *
+     * @param algorithm name of the algorithm, e.g. "lwt". Unknown names fall
+     *                  back to ATL.
+     */
+    public static Scheduler createScheduler(String algorithm) throws Exception {
+        return new Scheduler(createPolicy(algorithm));
+    }
+
+    /**
+     * Creates the policy of an algorithm, which can be run without a scheduler
+     *
+     * @param algorithm name of the algorithm, e.g. "lwt". Unknown names fall
+     *                  back to ATL.
+     */
+    public static SchedulingPolicy createPolicy(String algorithm) {
+        if (algorithm.equalsIgnoreCase("lrr")) {
+            return new LRRScheduler();
+        } else if (algorithm.equalsIgnoreCase("fc")) {
+            return new FCScheduler();
+        } else if (algorithm.equalsIgnoreCase("ff")) {
+            return new FFScheduler();
+        } else if (algorithm.equalsIgnoreCase("bf")) {
+            return new BFScheduler();
+        } else if (algorithm.equalsIgnoreCase("wf")) {
+            return new WFScheduler();
+        } else if (algorithm.equalsIgnoreCase("lwt")) {
+            return new LWTScheduler();
+        } else if (algorithm.equalsIgnoreCase("iff")) {
+            return new IFFScheduler();
+        } else if (algorithm.equalsIgnoreCase("ibf")) {
+            return new IBFScheduler();
+        } else if (algorithm.equalsIgnoreCase("iwf")) {
+            return new IWFScheduler();
         } else {
-            scheduler = new ATLScheduler();
+            return new ATLScheduler();
+        }
+    }
+
+    /**
+     * Runs the client
+     *
+     * <code>
+     * $ java Client [-h HOST] [-p PORT[,PORT]...] [SCHEDULING ALGORITHM]
+     * </code>
+     *
+     * If several ports are given, one scheduler is run against the server of
+     * each port at the same time.
+     */
+    public static void main(String[] args) throws Exception {
+        String algorithm = "atl";
+        String host = System.getProperty("ds.host", "127.0.0.1");
+        String ports = System.getProperty("ds.port", "50000");
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-h")) {
+                host = args[++i];
+            } else if (args[i].equals("-p")) {
+                ports = args[++i];
+            } else {
+                algorithm = args[i];
+            }
+        }
+
+        // Run against an in-process server if a configuration file is given
+        // E.g: java -Dds.config=configs/other/config20-short-med.xml Client bf
+        String configFile = System.getProperty("ds.config");
+        if (configFile != null) {
+            Scheduler scheduler = createScheduler(algorithm);
+            MockServer server = new MockServer(new File(configFile));
+            Transport transport = new MemoryTransport(server);
+            String recordingPath = System.getProperty("ds.record");
+            if (recordingPath != null) {
+                transport = new RecordingTransport(transport, recordingPath);
+            }
+            scheduler.setTransport(transport);
+            scheduler.getMetrics().loadHourlyRates(new File(configFile));
+            new Client(scheduler).start();
+            System.out.println(server.getSummary());
+            return;
+        }
+
+        String[] portList = ports.split(",");
+        if (portList.length == 1) {
+            Scheduler scheduler = createScheduler(algorithm);
+            scheduler.setAddress(host, Integer.parseInt(portList[0].trim()));
+            new Client(scheduler).start();
+            return;
+        }
+
+        // Run one client per server, each on its own thread, with its own
+        // files for the properties that name one
+        // E.g: java Client -p 50000,50001,50002 lwt
+        Thread[] threads = new Thread[portList.length];
+        Exception[] errors = new Exception[portList.length];
+        for (int i = 0; i < portList.length; i++) {
+            Scheduler scheduler = createScheduler(algorithm);
+            scheduler.setAddress(host, Integer.parseInt(portList[i].trim()));
+            scheduler.setFileSuffix(portList[i].trim());
+            Client dsClient = new Client(scheduler);
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    dsClient.start();
+                } catch (Exception e) {
+                    errors[index] = e;
+                }
+            }, "client-" + portList[i].trim());
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (Exception error : errors) {
+            if (error != null) {
+                throw error;
+            }
         }
-        dsClient = new Client(scheduler);
-        dsClient.start();
     }
 }
@@ -0,0 +1,1198 @@
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * This class is the client-side model of the servers in the simulation. The
+ * state of every server is kept in primitive arrays indexed by server index,
+ * where the servers of a type have consecutive indices in the order of
+ * <code> GETS All </code>, so a server is found by its type and ID without
+ * any lookup structure. Records of later GETS replies update the servers in
+ * place.
+ *
+ * The cluster also shadows the local queue of every server from the jobs the
+ * client schedules and the events it receives (JOBN, JCPL, RESF and RESR),
+ * simulating boot-up and strict-order job starts like ds-sim does, so that
+ * the state of the servers is known without querying ds-server.
+ */
+public class Cluster implements ClusterView {
+    // Server states, in the same order as their names
+    public static final int INACTIVE = 0;
+    public static final int BOOTING = 1;
+    public static final int IDLE = 2;
+    public static final int ACTIVE = 3;
+    public static final int UNAVAILABLE = 4;
+    protected static final String[] STATE_NAMES = { "inactive", "booting", "idle", "active", "unavailable" };
+
+    // Bootup time assumed for a server type until it is seen booting
+    public static final int DEFAULT_BOOTUP_TIME = 60;
+
+    // Server types and their initial resources
+    protected int typeCount;
+    protected String[] typeNames;
+    protected int[] typeOffsets; // index of the server with ID 0 of each type
+    protected int[] typeLimits; // number of servers of each type
+    protected int[] typeCores;
+    protected int[] typeMemory;
+    protected int[] typeDisks;
+    protected int[] typeBootupTimes;
+
+    // Servers
+    protected int serverCount;
+    protected int[] types;
+    protected int[] ids;
+    protected int[] states;
+    protected int[] startTimes;
+    protected int[] cores; // available cores
+    protected int[] memory; // available memory
+    protected int[] disks; // available disk
+    protected int[] waitingJobs; // number of waiting jobs
+    protected int[] runningJobs; // number of running jobs
+    protected int[] bootTimes; // time the server started booting
+    protected int[] versions; // incremented whenever the state or local queue changes
+
+    // Failure history of the servers, from RESF and RESR
+    protected int[] failureCounts;
+    protected int[] failureTimes; // time of the latest failure, or -1
+    protected int[] recoveryTimes; // time of the latest recovery, or -1
+    protected long[] downTimes; // total time unavailable before the latest recovery
+
+    // Local queues of the servers, as linked lists of job IDs
+    protected int[] waitingHeads;
+    protected int[] waitingTails;
+    protected int[] runningHeads;
+    protected int[] runningTails;
+    protected int bootingCount;
+
+    // Jobs, indexed by job ID
+    protected int jobCapacity;
+    protected int[] jobServers; // index of the server the job is scheduled to, or -1
+    protected int[] jobStates;
+    protected int[] jobSubmitTimes;
+    protected int[] jobStartTimes;
+    protected int[] jobEstRunTimes;
+    protected int[] jobCores;
+    protected int[] jobMemory;
+    protected int[] jobDisks;
+    protected int[] jobNext; // next job in the same local queue, or -1
+    protected int[] jobPrevious; // previous job in the same local queue, or -1
+
+    // Current simulation time, i.e. the time of the latest event
+    protected int currentTime;
+
+    // Indices of the servers in the latest GETS reply, in the order received
+    protected int[] records;
+    protected int recordCount;
+
+    // Records selected by selectCapable() are the servers of the capable types,
+    // which are found from the types when a record is read instead of being
+    // listed. The capable types and the record of the first server of each are
+    // kept in order, so a record is found by a binary search over the types.
+    protected boolean recordsPending;
+    protected int pendingTypeCount;
+    protected int[] pendingTypes;
+    protected int[] pendingTypeStarts;
+
+    // Jobs of the servers listed with LSTJ for the current decision, which
+    // getJobs() returns instead of the shadow local queues until they are
+    // cleared
+    protected JobList[] listedJobs;
+    protected boolean[] listed;
+    protected int[] listedServers;
+    protected int listedCount;
+
+    // Index of the resources each server has for a new job, and the servers
+    // changed since it was last refreshed
+    protected CapacityIndex capacityIndex;
+    protected boolean[] dirty;
+    protected int[] dirtyServers;
+    protected int dirtyCount;
+
+    public Cluster() {
+        typeNames = new String[8];
+        typeOffsets = new int[8];
+        typeLimits = new int[8];
+        typeCores = new int[8];
+        typeMemory = new int[8];
+        typeDisks = new int[8];
+        typeBootupTimes = new int[8];
+
+        types = new int[64];
+        ids = new int[64];
+        states = new int[64];
+        startTimes = new int[64];
+        cores = new int[64];
+        memory = new int[64];
+        disks = new int[64];
+        waitingJobs = new int[64];
+        runningJobs = new int[64];
+        bootTimes = new int[64];
+        versions = new int[64];
+        failureCounts = new int[64];
+        failureTimes = new int[64];
+        recoveryTimes = new int[64];
+        downTimes = new long[64];
+        waitingHeads = new int[64];
+        waitingTails = new int[64];
+        runningHeads = new int[64];
+        runningTails = new int[64];
+        records = new int[64];
+        pendingTypes = new int[8];
+        pendingTypeStarts = new int[8];
+        listedJobs = new JobList[64];
+        listed = new boolean[64];
+        listedServers = new int[64];
+        capacityIndex = new CapacityIndex(64);
+        dirty = new boolean[64];
+        dirtyServers = new int[64];
+
+        jobCapacity = 1024;
+        jobServers = new int[jobCapacity];
+        jobStates = new int[jobCapacity];
+        jobSubmitTimes = new int[jobCapacity];
+        jobStartTimes = new int[jobCapacity];
+        jobEstRunTimes = new int[jobCapacity];
+        jobCores = new int[jobCapacity];
+        jobMemory = new int[jobCapacity];
+        jobDisks = new int[jobCapacity];
+        jobNext = new int[jobCapacity];
+        jobPrevious = new int[jobCapacity];
+        Arrays.fill(jobServers, -1);
+    }
+
+    /**
+     * Returns whether the servers have been added, i.e. whether the reply of
+     * <code> GETS All </code> has been received
+     */
+    public boolean isLoaded() {
+        return serverCount > 0;
+    }
+
+    /**
+     * Adds a server from a record of <code> GETS All </code>. Servers must be
+     * added in the order they are received.
+     *
+     * @param message a server record, e.g.
+     *                <code> "juju 0 inactive -1 2 4000 16000 0 0" </code>
+     */
+    public void add(Message message) {
+        String typeName = message.getString(0);
+        int type = findType(typeName);
+        if (type < 0) {
+            type = addType(typeName);
+        }
+
+        int index = serverCount;
+        if (index == types.length) {
+            grow();
+        }
+        serverCount++;
+        typeLimits[type]++;
+        types[index] = type;
+        ids[index] = message.getInt(1);
+        bootTimes[index] = -1;
+        failureTimes[index] = -1;
+        recoveryTimes[index] = -1;
+        waitingHeads[index] = -1;
+        waitingTails[index] = -1;
+        runningHeads[index] = -1;
+        runningTails[index] = -1;
+        set(index, message);
+        if (states[index] == BOOTING) {
+            bootingCount++;
+        }
+
+        learnTypeResources(index);
+        addRecord(index);
+    }
+
+    /**
+     * Learns the initial resources of the type of a server from its record.
+     * They are the largest resources of its servers, as servers that are
+     * unavailable or already running jobs show less, so a type whose servers
+     * are all unavailable when the cluster is loaded is learnt later.
+     */
+    protected void learnTypeResources(int server) {
+        int type = types[server];
+        typeCores[type] = Math.max(typeCores[type], cores[server]);
+        typeMemory[type] = Math.max(typeMemory[type], memory[server]);
+        typeDisks[type] = Math.max(typeDisks[type], disks[server]);
+    }
+
+    /**
+     * Updates the server of a GETS record in place
+     *
+     * @param message a server record
+     * @return the index of the server
+     */
+    public int update(Message message) {
+        int index = indexOf(message.getString(0), message.getInt(1));
+        if (index < 0) {
+            throw new IllegalStateException("Unknown server in GETS record: " + message);
+        }
+
+        int previousState = states[index];
+        set(index, message);
+        updateBootingCount(previousState, states[index]);
+        learnTypeResources(index);
+        learnBootupTime(index);
+        addRecord(index);
+        return index;
+    }
+
+    /**
+     * Forgets the records of the previous GETS reply
+     */
+    public void clearRecords() {
+        recordCount = 0;
+        recordsPending = false;
+    }
+
+    protected void addRecord(int index) {
+        if (recordCount == records.length) {
+            int[] newRecords = new int[records.length * 2];
+            System.arraycopy(records, 0, newRecords, 0, recordCount);
+            records = newRecords;
+        }
+        records[recordCount++] = index;
+    }
+
+    /**
+     * Copies the fields of a GETS record into a server
+     */
+    protected void set(int index, Message message) {
+        touch(index);
+        states[index] = parseState(message, 2);
+        startTimes[index] = message.getInt(3);
+        cores[index] = message.getInt(4);
+        memory[index] = message.getInt(5);
+        disks[index] = message.getInt(6);
+        waitingJobs[index] = message.getInt(7);
+        runningJobs[index] = message.getInt(8);
+    }
+
+    /**
+     * Parses a field of a message as a server state
+     */
+    protected static int parseState(Message message, int field) {
+        for (int state = 0; state < STATE_NAMES.length; state++) {
+            if (message.fieldEquals(field, STATE_NAMES[state])) {
+                return state;
+            }
+        }
+        throw new IllegalStateException("Unknown server state in: " + message);
+    }
+
+    protected int addType(String typeName) {
+        if (typeCount == typeNames.length) {
+            int newLength = typeCount * 2;
+            typeNames = Arrays.copyOf(typeNames, newLength);
+            typeOffsets = Arrays.copyOf(typeOffsets, newLength);
+            typeLimits = Arrays.copyOf(typeLimits, newLength);
+            typeCores = Arrays.copyOf(typeCores, newLength);
+            typeMemory = Arrays.copyOf(typeMemory, newLength);
+            typeDisks = Arrays.copyOf(typeDisks, newLength);
+            typeBootupTimes = Arrays.copyOf(typeBootupTimes, newLength);
+        }
+        typeNames[typeCount] = typeName;
+        typeBootupTimes[typeCount] = DEFAULT_BOOTUP_TIME;
+        typeOffsets[typeCount] = serverCount;
+        return typeCount++;
+    }
+
+    protected void grow() {
+        int newLength = types.length * 2;
+        types = Arrays.copyOf(types, newLength);
+        ids = Arrays.copyOf(ids, newLength);
+        states = Arrays.copyOf(states, newLength);
+        startTimes = Arrays.copyOf(startTimes, newLength);
+        cores = Arrays.copyOf(cores, newLength);
+        memory = Arrays.copyOf(memory, newLength);
+        disks = Arrays.copyOf(disks, newLength);
+        waitingJobs = Arrays.copyOf(waitingJobs, newLength);
+        runningJobs = Arrays.copyOf(runningJobs, newLength);
+        bootTimes = Arrays.copyOf(bootTimes, newLength);
+        versions = Arrays.copyOf(versions, newLength);
+        failureCounts = Arrays.copyOf(failureCounts, newLength);
+        failureTimes = Arrays.copyOf(failureTimes, newLength);
+        recoveryTimes = Arrays.copyOf(recoveryTimes, newLength);
+        downTimes = Arrays.copyOf(downTimes, newLength);
+        waitingHeads = Arrays.copyOf(waitingHeads, newLength);
+        waitingTails = Arrays.copyOf(waitingTails, newLength);
+        runningHeads = Arrays.copyOf(runningHeads, newLength);
+        runningTails = Arrays.copyOf(runningTails, newLength);
+        dirty = Arrays.copyOf(dirty, newLength);
+        dirtyServers = Arrays.copyOf(dirtyServers, newLength);
+        listedJobs = Arrays.copyOf(listedJobs, newLength);
+        listed = Arrays.copyOf(listed, newLength);
+        listedServers = Arrays.copyOf(listedServers, newLength);
+        capacityIndex = new CapacityIndex(newLength);
+        for (int server = 0; server < serverCount; server++) {
+            markDirty(server);
+        }
+    }
+
+    /**
+     * Records a change of the state, resources or local queue of a server
+     */
+    protected void touch(int server) {
+        versions[server]++;
+        markDirty(server);
+    }
+
+    protected void markDirty(int server) {
+        if (!dirty[server]) {
+            dirty[server] = true;
+            dirtyServers[dirtyCount++] = server;
+        }
+    }
+
+    /**
+     * Updates the capacity index with the servers changed since the last
+     * refresh. A booting server shows its initial resources, but jobs queued on
+     * it take them once it is ready, so it is indexed with the resources left.
+     * This must be done before the index is searched with findFirstFit(),
+     * findBestFit() or findWorstFit().
+     */
+    public void refreshCapacityIndex() {
+        for (int i = 0; i < dirtyCount; i++) {
+            int server = dirtyServers[i];
+            dirty[server] = false;
+            int core = cores[server];
+            int mem = memory[server];
+            int disk = disks[server];
+            if (states[server] == BOOTING) {
+                core = typeCores[types[server]];
+                mem = typeMemory[types[server]];
+                disk = typeDisks[types[server]];
+                for (int jobID = runningHeads[server]; jobID >= 0; jobID = jobNext[jobID]) {
+                    core -= jobCores[jobID];
+                    mem -= jobMemory[jobID];
+                    disk -= jobDisks[jobID];
+                }
+                for (int jobID = waitingHeads[server]; jobID >= 0; jobID = jobNext[jobID]) {
+                    core -= jobCores[jobID];
+                    mem -= jobMemory[jobID];
+                    disk -= jobDisks[jobID];
+                }
+            }
+            capacityIndex.update(server, core, mem, disk);
+        }
+        dirtyCount = 0;
+    }
+
+    protected void growJobs(int newCapacity) {
+        jobServers = Arrays.copyOf(jobServers, newCapacity);
+        Arrays.fill(jobServers, jobCapacity, newCapacity, -1);
+        jobStates = Arrays.copyOf(jobStates, newCapacity);
+        jobSubmitTimes = Arrays.copyOf(jobSubmitTimes, newCapacity);
+        jobStartTimes = Arrays.copyOf(jobStartTimes, newCapacity);
+        jobEstRunTimes = Arrays.copyOf(jobEstRunTimes, newCapacity);
+        jobCores = Arrays.copyOf(jobCores, newCapacity);
+        jobMemory = Arrays.copyOf(jobMemory, newCapacity);
+        jobDisks = Arrays.copyOf(jobDisks, newCapacity);
+        jobNext = Arrays.copyOf(jobNext, newCapacity);
+        jobPrevious = Arrays.copyOf(jobPrevious, newCapacity);
+        jobCapacity = newCapacity;
+    }
+
+    protected void updateBootingCount(int previousState, int state) {
+        if (previousState == BOOTING) {
+            bootingCount--;
+        }
+        if (state == BOOTING) {
+            bootingCount++;
+        }
+    }
+
+    /**
+     * Learns the bootup time of a server's type if it is booting and the time
+     * it started booting is known
+     */
+    protected void learnBootupTime(int server) {
+        if (states[server] == BOOTING && bootTimes[server] >= 0 && startTimes[server] > bootTimes[server]) {
+            typeBootupTimes[types[server]] = startTimes[server] - bootTimes[server];
+        }
+    }
+
+    /**
+     * Updates the shadow state with an event received after REDY, i.e. JOBN,
+     * JOBP, JCPL, RESF or RESR. Other messages are ignored.
+     */
+    public void handleEvent(Message message) {
+        if (message.is("JOBN") || message.is("JOBP")) {
+            // E.g: JOBN 2142 12 750 4 250 800
+            int jobID = message.getInt(2);
+            advanceTo(message.getInt(1));
+            addJob(jobID, message.getInt(1), message.getInt(3), message.getInt(4), message.getInt(5),
+                    message.getInt(6));
+        } else if (message.is("JCPL")) {
+            // E.g: JCPL 2345 12 juju 0
+            advanceTo(message.getInt(1));
+            completeJob(message.getInt(2));
+        } else if (message.is("RESF") || message.is("RESR")) {
+            // E.g: RESF juju 0 2345
+            advanceTo(message.getInt(3));
+            int server = indexOf(message.getString(1), message.getInt(2));
+            if (server >= 0) {
+                if (message.is("RESF")) {
+                    failServer(server);
+                } else {
+                    recoverServer(server);
+                }
+            }
+        }
+    }
+
+    /**
+     * Advances the simulation time, completing the boot-up of servers whose
+     * bootup time has passed
+     */
+    public void advanceTo(int time) {
+        if (time > currentTime) {
+            currentTime = time;
+        }
+        if (bootingCount == 0) {
+            return;
+        }
+
+        for (int server = 0; server < serverCount; server++) {
+            if (states[server] == BOOTING && startTimes[server] <= currentTime) {
+                states[server] = IDLE;
+                touch(server);
+                bootingCount--;
+                startJobs(server, startTimes[server]);
+            }
+        }
+    }
+
+    /**
+     * Records a job submitted by ds-server
+     */
+    protected void addJob(int jobID, int submitTime, int estRunTime, int core, int mem, int disk) {
+        if (jobID >= jobCapacity) {
+            growJobs(Math.max(jobCapacity * 2, jobID + 1));
+        }
+
+        // A resubmitted job may still be in a local queue of the shadow
+        if (jobServers[jobID] >= 0) {
+            removeJob(jobID);
+        }
+
+        jobSubmitTimes[jobID] = submitTime;
+        jobStartTimes[jobID] = -1;
+        jobEstRunTimes[jobID] = estRunTime;
+        jobCores[jobID] = core;
+        jobMemory[jobID] = mem;
+        jobDisks[jobID] = disk;
+    }
+
+    /**
+     * Adds a submitted job to the local queue of a server, booting the server
+     * if it is inactive and starting the job if resources allow
+     *
+     * @param jobID  ID of the job
+     * @param server index of the server
+     */
+    public void assign(int jobID, int server) {
+        if (jobID >= jobCapacity) {
+            return;
+        }
+
+        if (jobServers[jobID] >= 0) {
+            removeJob(jobID);
+        }
+
+        if (states[server] == INACTIVE) {
+            states[server] = BOOTING;
+            touch(server);
+            bootingCount++;
+            bootTimes[server] = currentTime;
+            startTimes[server] = currentTime + typeBootupTimes[types[server]];
+        }
+
+        jobServers[jobID] = server;
+        jobStates[jobID] = JobList.WAITING;
+        jobStartTimes[jobID] = -1;
+        append(jobID, server, false);
+        waitingJobs[server]++;
+        startJobs(server);
+    }
+
+    /**
+     * Removes a completed job from its server and starts the waiting jobs that
+     * can now run
+     */
+    protected void completeJob(int jobID) {
+        if (jobID >= jobCapacity || jobServers[jobID] < 0) {
+            return;
+        }
+
+        int server = jobServers[jobID];
+        removeJob(jobID);
+        startJobs(server);
+    }
+
+    /**
+     * Marks a server as unavailable. Its jobs are killed and will be
+     * resubmitted by ds-server as JOBP.
+     */
+    protected void failServer(int server) {
+        while (runningHeads[server] >= 0) {
+            removeJob(runningHeads[server]);
+        }
+        while (waitingHeads[server] >= 0) {
+            removeJob(waitingHeads[server]);
+        }
+
+        failureCounts[server]++;
+        failureTimes[server] = currentTime;
+
+        updateBootingCount(states[server], UNAVAILABLE);
+        touch(server);
+        states[server] = UNAVAILABLE;
+        startTimes[server] = -1;
+        cores[server] = 0;
+        memory[server] = 0;
+        disks[server] = 0;
+    }
+
+    /**
+     * Marks a recovered server as inactive with all of its resources
+     */
+    protected void recoverServer(int server) {
+        if (failureTimes[server] >= 0) {
+            downTimes[server] += currentTime - failureTimes[server];
+        }
+        recoveryTimes[server] = currentTime;
+
+        updateBootingCount(states[server], INACTIVE);
+        touch(server);
+        states[server] = INACTIVE;
+        startTimes[server] = -1;
+        resetResources(server);
+    }
+
+    /**
+     * Marks a server terminated with TERM as inactive with all of its
+     * resources. Its jobs, if any, are killed and will be resubmitted by
+     * ds-server as JOBP.
+     */
+    public void terminateServer(int server) {
+        while (runningHeads[server] >= 0) {
+            removeJob(runningHeads[server]);
+        }
+        while (waitingHeads[server] >= 0) {
+            removeJob(waitingHeads[server]);
+        }
+
+        updateBootingCount(states[server], INACTIVE);
+        touch(server);
+        states[server] = INACTIVE;
+        startTimes[server] = -1;
+        resetResources(server);
+    }
+
+    protected void resetResources(int server) {
+        cores[server] = typeCores[types[server]];
+        memory[server] = typeMemory[types[server]];
+        disks[server] = typeDisks[types[server]];
+    }
+
+    /**
+     * Starts the waiting jobs of a ready server in strict order while its
+     * resources last, like ds-sim does
+     */
+    protected void startJobs(int server) {
+        startJobs(server, currentTime);
+    }
+
+    /**
+     * Starts the waiting jobs of a ready server at a time, e.g. the time it
+     * finished booting
+     */
+    protected void startJobs(int server, int time) {
+        int state = states[server];
+        if (state != IDLE && state != ACTIVE) {
+            return;
+        }
+
+        int jobID = waitingHeads[server];
+        while (jobID >= 0
+                && jobCores[jobID] <= cores[server]
+                && jobMemory[jobID] <= memory[server]
+                && jobDisks[jobID] <= disks[server]) {
+            int next = jobNext[jobID];
+            unlink(jobID, server, false);
+            waitingJobs[server]--;
+
+            jobStates[jobID] = JobList.RUNNING;
+            jobStartTimes[jobID] = time;
+            append(jobID, server, true);
+            runningJobs[server]++;
+            cores[server] -= jobCores[jobID];
+            memory[server] -= jobMemory[jobID];
+            disks[server] -= jobDisks[jobID];
+            jobID = next;
+        }
+
+        states[server] = runningJobs[server] + waitingJobs[server] == 0 ? IDLE : ACTIVE;
+    }
+
+    /**
+     * Removes a job from the local queue of its server, releasing its resources
+     * if it is running
+     */
+    protected void removeJob(int jobID) {
+        int server = jobServers[jobID];
+        if (jobStates[jobID] == JobList.RUNNING) {
+            unlink(jobID, server, true);
+            runningJobs[server]--;
+            cores[server] += jobCores[jobID];
+            memory[server] += jobMemory[jobID];
+            disks[server] += jobDisks[jobID];
+        } else {
+            unlink(jobID, server, false);
+            waitingJobs[server]--;
+        }
+        jobServers[jobID] = -1;
+
+        if ((states[server] == IDLE || states[server] == ACTIVE)
+                && runningJobs[server] + waitingJobs[server] == 0) {
+            states[server] = IDLE;
+        }
+    }
+
+    protected void append(int jobID, int server, boolean running) {
+        int[] heads = running ? runningHeads : waitingHeads;
+        int[] tails = running ? runningTails : waitingTails;
+        touch(server);
+        jobNext[jobID] = -1;
+        jobPrevious[jobID] = tails[server];
+        if (tails[server] >= 0) {
+            jobNext[tails[server]] = jobID;
+        } else {
+            heads[server] = jobID;
+        }
+        tails[server] = jobID;
+    }
+
+    protected void unlink(int jobID, int server, boolean running) {
+        int[] heads = running ? runningHeads : waitingHeads;
+        int[] tails = running ? runningTails : waitingTails;
+        touch(server);
+        int next = jobNext[jobID];
+        int previous = jobPrevious[jobID];
+        if (previous >= 0) {
+            jobNext[previous] = next;
+        } else {
+            heads[server] = next;
+        }
+        if (next >= 0) {
+            jobPrevious[next] = previous;
+        } else {
+            tails[server] = previous;
+        }
+    }
+
+    /**
+     * Lists the jobs of a server, running jobs first, in the same format and
+     * order as LSTJ. They are the jobs listed with LSTJ for the current
+     * decision if there are any, or the shadow local queue otherwise.
+     *
+     * @param server index of the server
+     * @param jobs   the list to fill
+     */
+    public void getJobs(int server, JobList jobs) {
+        jobs.clear();
+        if (listed[server]) {
+            jobs.addAll(listedJobs[server]);
+            return;
+        }
+
+        for (int jobID = runningHeads[server]; jobID >= 0; jobID = jobNext[jobID]) {
+            jobs.add(jobID, JobList.RUNNING, jobSubmitTimes[jobID], jobStartTimes[jobID], jobEstRunTimes[jobID],
+                    jobCores[jobID], jobMemory[jobID], jobDisks[jobID]);
+        }
+
+        // Waiting jobs of a booting server are expected to start when it is ready
+        int startTime = states[server] == BOOTING ? startTimes[server] : -1;
+        for (int jobID = waitingHeads[server]; jobID >= 0; jobID = jobNext[jobID]) {
+            jobs.add(jobID, JobList.WAITING, jobSubmitTimes[jobID], startTime, jobEstRunTimes[jobID],
+                    jobCores[jobID], jobMemory[jobID], jobDisks[jobID]);
+        }
+    }
+
+    /**
+     * Returns the list to receive the jobs of a server listed with LSTJ for
+     * the current decision. Until clearListedJobs() is called, getJobs()
+     * returns them instead of the shadow local queue.
+     *
+     * @param server index of the server
+     * @return the list, emptied
+     */
+    public JobList listJobs(int server) {
+        if (listedJobs[server] == null) {
+            listedJobs[server] = new JobList();
+        }
+        if (!listed[server]) {
+            listed[server] = true;
+            listedServers[listedCount++] = server;
+        }
+        listedJobs[server].clear();
+        return listedJobs[server];
+    }
+
+    /**
+     * Forgets the jobs listed for the current decision, so getJobs() returns
+     * the shadow local queues again
+     */
+    public void clearListedJobs() {
+        for (int i = 0; i < listedCount; i++) {
+            listed[listedServers[i]] = false;
+        }
+        listedCount = 0;
+    }
+
+    /**
+     * Replaces the shadow local queue of a server with the jobs listed by LSTJ.
+     * The resources of the server are left as reported by the latest GETS
+     * record.
+     */
+    public void setJobs(int server, JobList jobs) {
+        for (int jobID = runningHeads[server]; jobID >= 0; jobID = jobNext[jobID]) {
+            jobServers[jobID] = -1;
+        }
+        for (int jobID = waitingHeads[server]; jobID >= 0; jobID = jobNext[jobID]) {
+            jobServers[jobID] = -1;
+        }
+        touch(server);
+        runningHeads[server] = -1;
+        runningTails[server] = -1;
+        waitingHeads[server] = -1;
+        waitingTails[server] = -1;
+        runningJobs[server] = 0;
+        waitingJobs[server] = 0;
+
+        for (int i = 0; i < jobs.size(); i++) {
+            int jobID = jobs.getID(i);
+            if (jobID >= jobCapacity) {
+                growJobs(Math.max(jobCapacity * 2, jobID + 1));
+            }
+
+            // Take the job off another server it is still shadowed on
+            if (jobServers[jobID] >= 0) {
+                removeJob(jobID);
+            }
+
+            boolean running = jobs.getState(i) == JobList.RUNNING;
+            jobServers[jobID] = server;
+            jobStates[jobID] = running ? JobList.RUNNING : JobList.WAITING;
+            jobSubmitTimes[jobID] = jobs.getSubmitTime(i);
+            jobStartTimes[jobID] = running ? jobs.getStartTime(i) : -1;
+            jobEstRunTimes[jobID] = jobs.getEstRunTime(i);
+            jobCores[jobID] = jobs.getCores(i);
+            jobMemory[jobID] = jobs.getMemory(i);
+            jobDisks[jobID] = jobs.getDisk(i);
+            append(jobID, server, running);
+            if (running) {
+                runningJobs[server]++;
+            } else {
+                waitingJobs[server]++;
+            }
+        }
+    }
+
+    /**
+     * Compares a GETS record with the shadow of its server and corrects the
+     * server's state and resources
+     *
+     * @param message a server record
+     * @return whether the numbers of waiting and running jobs in the record
+     *         match the shadow local queue of the server
+     */
+    public boolean reconcile(Message message) {
+        int server = indexOf(message.getString(0), message.getInt(1));
+        if (server < 0) {
+            throw new IllegalStateException("Unknown server in GETS record: " + message);
+        }
+
+        int shadowWaitingJobs = waitingJobs[server];
+        int shadowRunningJobs = runningJobs[server];
+        update(message);
+        return waitingJobs[server] == shadowWaitingJobs && runningJobs[server] == shadowRunningJobs;
+    }
+
+    /**
+     * Selects the servers capable of running a job, in the order of
+     * <code> GETS Capable </code>, as the records of the latest reply
+     *
+     * @return the number of capable servers
+     */
+    public int selectCapable(int core, int mem, int disk) {
+        clearRecords();
+        if (pendingTypes.length < typeCount) {
+            pendingTypes = new int[typeNames.length];
+            pendingTypeStarts = new int[typeNames.length];
+        }
+        int count = 0;
+        pendingTypeCount = 0;
+        for (int type = 0; type < typeCount; type++) {
+            if (typeLimits[type] > 0 && typeCores[type] >= core && typeMemory[type] >= mem
+                    && typeDisks[type] >= disk) {
+                pendingTypes[pendingTypeCount] = type;
+                pendingTypeStarts[pendingTypeCount] = count;
+                pendingTypeCount++;
+                count += typeLimits[type];
+            }
+        }
+
+        // The servers are not listed, as policies using the capacity index do
+        // not read them
+        recordCount = count;
+        recordsPending = true;
+        return count;
+    }
+
+    /**
+     * Lists the servers selected by selectCapable() into records
+     */
+    protected void listPendingRecords() {
+        if (records.length < recordCount) {
+            records = new int[Integer.highestOneBit(recordCount) << 1];
+        }
+        for (int i = 0; i < recordCount; i++) {
+            records[i] = getRecord(i);
+        }
+        recordsPending = false;
+    }
+
+    /**
+     * Keeps the records whose server passes a preferred test, in the same
+     * order, or those passing a required test if none passes the preferred one
+     *
+     * @return the number of records, 0 if none passes the required test
+     */
+    public int retainRecords(IntPredicate preferred, IntPredicate required) {
+        if (recordsPending) {
+            listPendingRecords();
+        }
+
+        IntPredicate test = preferred;
+        int count = countRecords(preferred);
+        if (count == 0 && required != preferred) {
+            test = required;
+            count = countRecords(required);
+        }
+        if (count == recordCount) {
+            return recordCount;
+        }
+
+        count = 0;
+        for (int i = 0; i < recordCount; i++) {
+            if (test.test(records[i])) {
+                records[count++] = records[i];
+            }
+        }
+        recordCount = count;
+        return count;
+    }
+
+    protected int countRecords(IntPredicate test) {
+        int count = 0;
+        for (int i = 0; i < recordCount; i++) {
+            if (test.test(records[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the first server whose resources are sufficient for a job, in the
+     * order of GETS All, or -1 if there is none. A booting server has the
+     * resources left after the jobs queued on it.
+     */
+    public int findFirstFit(int core, int mem, int disk) {
+        return capacityIndex.findFirstFit(core, mem, disk);
+    }
+
+    /**
+     * Returns the server with the fewest available cores among those whose
+     * resources are sufficient for a job, the first in the order of GETS All
+     * on a tie, or -1 if there is none
+     */
+    public int findBestFit(int core, int mem, int disk) {
+        return capacityIndex.findBestFit(core, mem, disk);
+    }
+
+    /**
+     * Returns the server with the most available cores among those whose
+     * resources are sufficient for a job, the first in the order of GETS All
+     * on a tie, or -1 if there is none
+     */
+    public int findWorstFit(int core, int mem, int disk) {
+        return capacityIndex.findWorstFit(core, mem, disk);
+    }
+
+    /**
+     * Selects all servers, in the order of <code> GETS All </code>, as the
+     * records of the latest reply
+     *
+     * @return the number of servers
+     */
+    public int selectAll() {
+        clearRecords();
+        for (int server = 0; server < serverCount; server++) {
+            addRecord(server);
+        }
+        return recordCount;
+    }
+
+    /**
+     * Moves a job of the shadow to the end of the local queue of another
+     * server, starting the jobs that can now run on both servers
+     */
+    public void migrate(int jobID, int server) {
+        if (jobID >= jobCapacity || jobServers[jobID] < 0) {
+            return;
+        }
+        int source = jobServers[jobID];
+        assign(jobID, server);
+        startJobs(source);
+    }
+
+    /**
+     * Returns the last waiting job of a server in the shadow, or -1 if it has
+     * none
+     */
+    public int getLastWaitingJob(int server) {
+        return waitingTails[server];
+    }
+
+    /**
+     * Returns the index of the server a job is scheduled to in the shadow, or
+     * -1 if it is not scheduled
+     */
+    public int getJobServer(int jobID) {
+        return jobID < jobCapacity ? jobServers[jobID] : -1;
+    }
+
+    public int getJobEstRunTime(int jobID) {
+        return jobEstRunTimes[jobID];
+    }
+
+    public int getJobCores(int jobID) {
+        return jobCores[jobID];
+    }
+
+    public int getJobMemory(int jobID) {
+        return jobMemory[jobID];
+    }
+
+    public int getJobDisk(int jobID) {
+        return jobDisks[jobID];
+    }
+
+    /**
+     * Returns the time a job started in the shadow, or -1 if it has not
+     * started
+     */
+    public int getJobStartTime(int jobID) {
+        return jobID < jobCapacity ? jobStartTimes[jobID] : -1;
+    }
+
+    public int getFailureCount(int server) {
+        return failureCounts[server];
+    }
+
+    public int getRecoveryTime(int server) {
+        return recoveryTimes[server];
+    }
+
+    /**
+     * Returns the mean time a server has been available between failures, or
+     * -1 if it has not failed
+     */
+    public double getMeanTimeToFailure(int server) {
+        if (failureCounts[server] == 0) {
+            return -1;
+        }
+        long upTime = currentTime - downTimes[server];
+        if (states[server] == UNAVAILABLE && failureTimes[server] >= 0) {
+            upTime -= currentTime - failureTimes[server];
+        }
+        return (double) upTime / failureCounts[server];
+    }
+
+    public int getCurrentTime() {
+        return currentTime;
+    }
+
+    public int getBootupTime(int type) {
+        return typeBootupTimes[type];
+    }
+
+    /**
+     * Returns the index of a server type, or -1 if there is no such type
+     */
+    public int findType(String typeName) {
+        // Type names from the same Message are interned, so compare references
+        // first
+        for (int type = 0; type < typeCount; type++) {
+            if (typeNames[type] == typeName) {
+                return type;
+            }
+        }
+        for (int type = 0; type < typeCount; type++) {
+            if (typeNames[type].equals(typeName)) {
+                return type;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of a server, or -1 if there is no such server
+     *
+     * @param typeName type of the server
+     * @param id       ID of the server
+     */
+    public int indexOf(String typeName, int id) {
+        int type = findType(typeName);
+        if (type < 0 || id < 0 || id >= typeLimits[type]) {
+            return -1;
+        }
+        return typeOffsets[type] + id;
+    }
+
+    public int getServerCount() {
+        return serverCount;
+    }
+
+    /**
+     * Returns the number of records in the latest GETS reply
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Returns the server index of a record in the latest GETS reply
+     */
+    public int getRecord(int i) {
+        if (!recordsPending) {
+            return records[i];
+        }
+
+        // Find the last capable type whose first record is at or before i
+        int low = 0;
+        int high = pendingTypeCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (pendingTypeStarts[middle] <= i) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return typeOffsets[pendingTypes[low]] + i - pendingTypeStarts[low];
+    }
+
+    public int getTypeCount() {
+        return typeCount;
+    }
+
+    public String getTypeName(int type) {
+        return typeNames[type];
+    }
+
+    public int getTypeLimit(int type) {
+        return typeLimits[type];
+    }
+
+    public int getTypeOffset(int type) {
+        return typeOffsets[type];
+    }
+
+    public int getTypeCores(int type) {
+        return typeCores[type];
+    }
+
+    public int getTypeMemory(int type) {
+        return typeMemory[type];
+    }
+
+    public int getTypeDisk(int type) {
+        return typeDisks[type];
+    }
+
+    public int getType(int server) {
+        return types[server];
+    }
+
+    /**
+     * Returns the type name of a server, as used in commands such as SCHD
+     */
+    public String getServerType(int server) {
+        return typeNames[types[server]];
+    }
+
+    public int getID(int server) {
+        return ids[server];
+    }
+
+    public int getState(int server) {
+        return states[server];
+    }
+
+    public int getStartTime(int server) {
+        return startTimes[server];
+    }
+
+    public int getCores(int server) {
+        return cores[server];
+    }
+
+    public int getMemory(int server) {
+        return memory[server];
+    }
+
+    public int getDisk(int server) {
+        return disks[server];
+    }
+
+    /**
+     * Returns the version of a server, which changes whenever its state or
+     * local queue changes
+     */
+    public int getVersion(int server) {
+        return versions[server];
+    }
+
+    public int getWaitingJobs(int server) {
+        return waitingJobs[server];
+    }
+
+    public int getRunningJobs(int server) {
+        return runningJobs[server];
+    }
+
+    public int getInitialCores(int server) {
+        return typeCores[types[server]];
+    }
+
+    public int getInitialMemory(int server) {
+        return typeMemory[types[server]];
+    }
+
+    public int getInitialDisk(int server) {
+        return typeDisks[types[server]];
+    }
+
+    /**
+     * Returns the server as it is named in commands, e.g. <code> "juju 0" </code>
+     */
+    public String getName(int server) {
+        return typeNames[types[server]] + " " + ids[server];
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * This interface is a read-only view of the servers of a Cluster, given to a
+ * SchedulingPolicy to choose a server for a job. Servers are identified by
+ * their index, and server types by their index in the order of GETS All.
+ */
+public interface ClusterView {
+    boolean isLoaded();
+
+    /**
+     * Returns the current simulation time, i.e. the time of the latest event
+     */
+    int getCurrentTime();
+
+    /**
+     * Returns the expected bootup time of a server type
+     */
+    int getBootupTime(int type);
+
+    /**
+     * Lists the jobs of a server, running jobs first: those listed with LSTJ
+     * for the current decision, or those known to the cluster otherwise
+     */
+    void getJobs(int server, JobList jobs);
+
+    /**
+     * Returns the last waiting job of a server known to the cluster, or -1 if
+     * it has none
+     */
+    int getLastWaitingJob(int server);
+
+    /**
+     * Returns the index of the server a job is scheduled to, or -1
+     */
+    int getJobServer(int jobID);
+
+    int getJobEstRunTime(int jobID);
+
+    int getJobCores(int jobID);
+
+    int getJobMemory(int jobID);
+
+    int getJobDisk(int jobID);
+
+    /**
+     * Returns the index of a server type, or -1 if there is no such type
+     */
+    int findType(String typeName);
+
+    /**
+     * Returns the index of a server, or -1 if there is no such server
+     */
+    int indexOf(String typeName, int id);
+
+    int getServerCount();
+
+    /**
+     * Returns the number of records in the latest GETS reply
+     */
+    int getRecordCount();
+
+    /**
+     * Returns the server index of a record in the latest GETS reply
+     */
+    int getRecord(int i);
+
+    int getTypeCount();
+
+    String getTypeName(int type);
+
+    int getTypeLimit(int type);
+
+    int getTypeOffset(int type);
+
+    int getTypeCores(int type);
+
+    int getTypeMemory(int type);
+
+    int getTypeDisk(int type);
+
+    int getType(int server);
+
+    String getServerType(int server);
+
+    int getID(int server);
+
+    int getState(int server);
+
+    int getStartTime(int server);
+
+    int getCores(int server);
+
+    int getMemory(int server);
+
+    int getDisk(int server);
+
+    /**
+     * Returns the version of a server, which changes whenever its state or
+     * local queue changes
+     */
+    int getVersion(int server);
+
+    int getWaitingJobs(int server);
+
+    int getRunningJobs(int server);
+
+    int getInitialCores(int server);
+
+    int getInitialMemory(int server);
+
+    int getInitialDisk(int server);
+
+    /**
+     * Returns the name of a server, e.g. "juju 0"
+     */
+    String getName(int server);
+
+    /**
+     * Returns the number of times a server has failed
+     */
+    int getFailureCount(int server);
+
+    /**
+     * Returns the time a server latest recovered from a failure, or -1
+     */
+    int getRecoveryTime(int server);
+
+    /**
+     * Returns the mean time a server has been available between failures, or
+     * -1 if it has not failed
+     */
+    double getMeanTimeToFailure(int server);
+
+    /**
+     * Returns the first server whose resources are sufficient for a job, in the
+     * order of GETS All, or -1 if there is none. A booting server has the
+     * resources left after the jobs queued on it. The capacity index these
+     * searches use is refreshed before a policy is asked to place a job.
+     */
+    int findFirstFit(int core, int mem, int disk);
+
+    /**
+     * Returns the server with the fewest available cores among those whose
+     * resources are sufficient for a job, or -1 if there is none
+     */
+    int findBestFit(int core, int mem, int disk);
+
+    /**
+     * Returns the server with the most available cores among those whose
+     * resources are sufficient for a job, or -1 if there is none
+     */
+    int findWorstFit(int core, int mem, int disk);
+}
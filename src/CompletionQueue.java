@@ -0,0 +1,166 @@
+import java.util.Arrays;
+
+/**
+ * This class is a min-heap of jobs by their expected completion time, kept in
+ * primitive arrays. It is used to simulate the local queue of a server, where
+ * the next event is always the earliest completion of a running job.
+ */
+public class CompletionQueue {
+    protected int size;
+    protected int[] endTimes;
+    protected int[] cores;
+    protected int[] memory;
+    protected int[] disks;
+
+    // Whether jobs have been added with addUnordered() since the last heapify
+    protected boolean unordered;
+
+    public CompletionQueue() {
+        endTimes = new int[16];
+        cores = new int[16];
+        memory = new int[16];
+        disks = new int[16];
+    }
+
+    /**
+     * Removes all jobs from the queue
+     */
+    public void clear() {
+        size = 0;
+        unordered = false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Adds a job without ordering the queue. The queue is ordered with a single
+     * O(n) heapify before it is next read, which is cheaper than adding jobs one
+     * by one when a queue is built from a list of running jobs.
+     */
+    public void addUnordered(int endTime, int core, int mem, int disk) {
+        ensureCapacity();
+        endTimes[size] = endTime;
+        cores[size] = core;
+        memory[size] = mem;
+        disks[size] = disk;
+        size++;
+        unordered = true;
+    }
+
+    /**
+     * Adds a job to the queue
+     */
+    public void add(int endTime, int core, int mem, int disk) {
+        heapify();
+        ensureCapacity();
+
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (endTimes[parent] <= endTime) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        endTimes[i] = endTime;
+        cores[i] = core;
+        memory[i] = mem;
+        disks[i] = disk;
+    }
+
+    /**
+     * Returns the earliest completion time in the queue
+     */
+    public int peekEndTime() {
+        heapify();
+        return endTimes[0];
+    }
+
+    public int peekCores() {
+        heapify();
+        return cores[0];
+    }
+
+    public int peekMemory() {
+        heapify();
+        return memory[0];
+    }
+
+    public int peekDisk() {
+        heapify();
+        return disks[0];
+    }
+
+    /**
+     * Removes the job with the earliest completion time
+     */
+    public void remove() {
+        heapify();
+        size--;
+        if (size > 0) {
+            siftDown(0, endTimes[size], cores[size], memory[size], disks[size]);
+        }
+    }
+
+    /**
+     * Orders the jobs added with addUnordered() into a heap
+     */
+    protected void heapify() {
+        if (!unordered) {
+            return;
+        }
+        unordered = false;
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i, endTimes[i], cores[i], memory[i], disks[i]);
+        }
+    }
+
+    /**
+     * Places a job at a position of the heap, moving it down until its children
+     * complete later
+     */
+    protected void siftDown(int i, int endTime, int core, int mem, int disk) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && endTimes[child + 1] < endTimes[child]) {
+                child++;
+            }
+            if (endTimes[child] >= endTime) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        endTimes[i] = endTime;
+        cores[i] = core;
+        memory[i] = mem;
+        disks[i] = disk;
+    }
+
+    protected void move(int from, int to) {
+        endTimes[to] = endTimes[from];
+        cores[to] = cores[from];
+        memory[to] = memory[from];
+        disks[to] = disks[from];
+    }
+
+    protected void ensureCapacity() {
+        if (size == endTimes.length) {
+            int newLength = size * 2;
+            endTimes = Arrays.copyOf(endTimes, newLength);
+            cores = Arrays.copyOf(cores, newLength);
+            memory = Arrays.copyOf(memory, newLength);
+            disks = Arrays.copyOf(disks, newLength);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * <p>
+ * This class records a distribution of non-negative values, e.g. latencies in
+ * nanoseconds, in the manner of HdrHistogram: values below 128 are counted
+ * exactly, and larger values in buckets whose width doubles with every power
+ * of two, 64 buckets per power. Every value is therefore recorded within 1.6%
+ * of its magnitude, with a fixed array of counts and no allocation.
+ * </p>
+ *
+ * <p>
+ * E.g: values 0-127 have their own buckets, 128-129 share one bucket, 130-131
+ * the next, and 256-259 share the first bucket of the next power.
+ * </p>
+ */
+public class Histogram {
+    // Values below this are counted exactly; it is also twice the number of
+    // buckets in each power of two above it
+    protected static final int SUB_BUCKETS = 128;
+    protected static final int HALF_SUB_BUCKETS = SUB_BUCKETS / 2;
+
+    // Number of buckets needed to count any non-negative long
+    protected static final int BUCKET_COUNT = SUB_BUCKETS + (63 - 7) * HALF_SUB_BUCKETS;
+
+    protected long[] counts;
+    protected long totalCount;
+    protected long totalValue;
+    protected long maxValue;
+
+    public Histogram() {
+        counts = new long[BUCKET_COUNT];
+    }
+
+    /**
+     * Records a value, clamping negative values to 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        totalValue += value;
+        if (value > maxValue) {
+            maxValue = value;
+        }
+    }
+
+    /**
+     * Returns the index of the bucket of a value
+     */
+    protected static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        // Shift the value so that it falls in [64, 128), and use the shift to
+        // select the power of two
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return SUB_BUCKETS + (shift - 1) * HALF_SUB_BUCKETS + (int) (value >>> shift) - HALF_SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the highest value counted in a bucket
+     */
+    protected static long highestValueOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF_SUB_BUCKETS + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Returns the value at a percentile, i.e. the highest value of the bucket
+     * which the percentile falls in, capped at the maximum recorded value
+     *
+     * @param percentile the percentile, from 0 to 100
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            count += counts[i];
+            if (count >= rank) {
+                return Math.min(highestValueOf(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) totalValue / totalCount;
+    }
+}
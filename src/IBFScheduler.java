@@ -1,5 +1,4 @@
-import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.function.IntConsumer;
 
 /**
  * This class implements the <b> Improved Best Fit </b> scheduling algorithm,
@@ -7,204 +6,165 @@ import java.util.TreeMap;
  * backfilling is not allowed in ds-sim.
  */
 
-public class IBFScheduler extends Scheduler {
+public class IBFScheduler implements SchedulingPolicy {
     // Information of the current job
-    String jobID = "";
+    int jobID = 0;
     int requiredCore = 0;
     int requiredMemory = 0;
     int requiredDisk = 0;
 
-    // Information of the best readily available server
-    protected String bestReadilyAvailableServerType = "";
-    protected String bestReadilyAvailableServerID = "";
+    // Index of the best readily available server in cluster, and its cores
+    protected int bestReadilyAvailableServer = -1;
     protected int bestReadilyAvailableServerCore = 0;
 
-    // Information of the best sufficient server regardless of availability
-    protected String bestSufficientServerType = "";
-    protected String bestSufficientServerID = "";
+    // Index of the best sufficient server regardless of availability
+    protected int bestSufficientServer = -1;
 
-    // Because booting servers do not show the scorrect number of available
-    // resources after GETS Capable call, we need to use LSTJ for them.
-    // Therefore, we need to store the available servers and check them later
-    protected ArrayList<String[]> availableServers;
+    // Options of the run, and the candidate servers of the current job
+    protected PolicyContext context = new PolicyContext();
 
-    // Initial resources of the servers
-    protected TreeMap<String, Integer[]> serverInitialResources;
+    @Override
+    public void setContext(PolicyContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Places a job based on the <b> Best Fit </b> algorithm
+     */
+    @Override
+    public int place(Job job, ClusterView cluster) throws Exception {
+        // Scan job information
+        jobID = job.getID();
+        requiredCore = job.getCores();
+        requiredMemory = job.getMemory();
+        requiredDisk = job.getDisk();
+
+        // The records of cluster are the capable servers
+        int serverCount = cluster.getRecordCount();
+
+        // First server in the list has the least number of cores
+        // therefore it is the best-fit sufficient server
+        if (serverCount > 0) {
+            bestSufficientServer = cluster.getRecord(0);
+        }
+
+        // Find best-fit readily available server
+        findBestFitServer(cluster);
 
-    public IBFScheduler() throws Exception {
-        super();
-        availableServers = new ArrayList<>();
-        serverInitialResources = new TreeMap<>();
+        // Schedule job
+        // If there is no readily available, schedule to the best sufficient server
+        int server = bestReadilyAvailableServer >= 0 ? bestReadilyAvailableServer : bestSufficientServer;
+        reset();
+        return server;
     }
 
     /**
-     * Schedules jobs based on the <b> Best Fit </b> algorithm
+     * Lists the jobs of the booting servers whose resources seem sufficient,
+     * as booting servers do not show the resources taken by their jobs
      */
     @Override
-    public void schedule() throws Exception {
-        // Start communication
-        send("HELO");
-        receive();
-        send("AUTH " + System.getProperty("user.name"));
-        receive();
-
-        do {
-            send("REDY");
-            receive();
-
-            // Ignore if receive a message other than JOBN
-            if (!latestMessage[0].equals("JOBN")) {
-                continue;
+    public void selectJobLists(Job job, ClusterView cluster, IntConsumer servers) {
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
+            if (cluster.getState(server) == Cluster.BOOTING && cluster.getCores(server) >= job.getCores()
+                    && cluster.getMemory(server) >= job.getMemory() && cluster.getDisk(server) >= job.getDisk()) {
+                servers.accept(server);
             }
+        }
+    }
 
-            // Scan job information
-            jobID = latestMessage[2];
-            requiredCore = Integer.parseInt(latestMessage[4]);
-            requiredMemory = Integer.parseInt(latestMessage[5]);
-            requiredDisk = Integer.parseInt(latestMessage[6]);
-
-            // Get capable server records
-            send("GETS Capable " + requiredCore + " " + requiredMemory + " " + requiredDisk);
-            receive();
-            send("OK");
-
-            // Traverse all server records
-            int serverCount = Integer.parseInt(latestMessage[1]);
-            for (int i = 0; i < serverCount; i++) {
-                receive();
-
-                // Current resources of the server
-                int availableCore = Integer.parseInt(latestMessage[4]);
-                int availableMemory = Integer.parseInt(latestMessage[5]);
-                int availableDisk = Integer.parseInt(latestMessage[6]);
-
-                // GETS Capable is not guaranteed to return the intial cores of the servers at
-                // every iteration, so we have to store them before assigning these servers any
-                // job.
-                if (!serverInitialResources.containsKey(latestMessage[0])) {
-                    serverInitialResources.put(latestMessage[0],
-                            new Integer[] { availableCore, availableMemory, availableDisk });
-                }
-
-                // First server in the list has the least number of cores
-                // therefore it is the best-fit sufficient server
-                if (i == 0) {
-                    bestSufficientServerType = latestMessage[0];
-                    bestSufficientServerID = latestMessage[1];
-                }
-
-                // Store available servers for later check
-                if (availableCore >= requiredCore
-                        && availableMemory >= requiredMemory
-                        && availableDisk >= requiredDisk) {
-                    availableServers.add(latestMessage);
-                }
+    /**
+     * Finds the best fit server in readily available servers, i.e. capable
+     * servers whose current resources are sufficient for the job
+     */
+    protected void findBestFitServer(ClusterView cluster) {
+        context.clearCandidates();
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
+
+            // Skip servers that are not readily available
+            if (cluster.getCores(server) < requiredCore
+                    || cluster.getMemory(server) < requiredMemory
+                    || cluster.getDisk(server) < requiredDisk) {
+                continue;
             }
 
-            // Finish receiving server records
-            send("OK");
-            receive();
+            context.addCandidate(server);
+        }
+
+        context.scoreCandidates(candidate -> getAvailableCore(candidate, cluster));
 
-            // Find best-fit readily available server
-            findBestFitServer();
+        // Check for best-fit in the order of the records
+        for (int i = 0; i < context.getCandidateCount(); i++) {
+            int availableCore = context.getScore(i);
+            if (availableCore < 0) {
+                continue;
+            }
 
-            // Schedule job
-            if (!bestReadilyAvailableServerType.equals("")) {
-                // If there is a readily available server, schedule to it
-                send("SCHD " + jobID + " " + bestReadilyAvailableServerType + " " + bestReadilyAvailableServerID);
-            } else {
-                // If there is no readily available, schedule to the best sufficient server
-                send("SCHD " + jobID + " " + bestSufficientServerType + " " + bestSufficientServerID);
+            if (availableCore < bestReadilyAvailableServerCore || bestReadilyAvailableServerCore == 0) {
+                bestReadilyAvailableServer = context.getCandidate(i);
+                bestReadilyAvailableServerCore = availableCore;
             }
-            receive();
-            reset();
-        } while (!latestMessage[0].equals("NONE"));
-
-        // End communication
-        send("QUIT");
-        receive();
-        close();
+        }
     }
 
     /**
-     * Finds the best fit server in readily available servers,
-     * i.e. <code> availableServers </code>
+     * Returns the cores a candidate has available for the current job, or -1
+     * if its resources are not sufficient
+     *
+     * @param candidate index of the candidate
+     * @param cluster   the servers
      */
-    protected void findBestFitServer() throws Exception {
-        for (String[] server : availableServers) {
-            String serverType = server[0];
-            String serverID = server[1];
-            String serverState = server[2];
-
-            int availableCore;
-            int availableMemory;
-            int availableDisk;
-
-            if (serverState.equals("booting")) {
-                // If the server is booting, recalculate its resources by subtracting the
-                // required resources of waiting jobs from the server's initial resources
-                Integer[] initialResources = serverInitialResources.get(serverType);
-                availableCore = initialResources[0];
-                availableMemory = initialResources[1];
-                availableDisk = initialResources[2];
-
-                // Traverse job records
-                send("LSTJ " + serverType + " " + serverID);
-                receive();
-                send("OK");
-
-                int jobCount = Integer.parseInt(latestMessage[1]);
-                for (int i = 0; i < jobCount; i++) {
-                    receive();
-                    int _requiredCore = Integer.parseInt(latestMessage[5]);
-                    int _requiredMemory = Integer.parseInt(latestMessage[6]);
-                    int _requiredDisk = Integer.parseInt(latestMessage[7]);
-
-                    availableCore -= _requiredCore;
-                    availableMemory -= _requiredMemory;
-                    availableDisk -= _requiredDisk;
-                }
-
-                // Finish receiving job records
-                send("OK");
-                receive();
-            } else {
-                // Else use the stored values
-                availableCore = Integer.parseInt(server[4]);
-                availableMemory = Integer.parseInt(server[5]);
-                availableDisk = Integer.parseInt(server[6]);
+    protected int getAvailableCore(int candidate, ClusterView cluster) {
+        int server = context.getCandidate(candidate);
+
+        // Current resources of the server
+        int availableCore = cluster.getCores(server);
+        int availableMemory = cluster.getMemory(server);
+        int availableDisk = cluster.getDisk(server);
+
+        if (cluster.getState(server) == Cluster.BOOTING) {
+            // If the server is booting, recalculate its resources by subtracting the
+            // required resources of waiting jobs from the server's initial resources
+            availableCore = cluster.getInitialCores(server);
+            availableMemory = cluster.getInitialMemory(server);
+            availableDisk = cluster.getInitialDisk(server);
+
+            // Traverse job records, which are listed with LSTJ because booting
+            // servers do not show the correct number of available resources
+            JobList jobs = context.getCandidateJobs(candidate);
+            cluster.getJobs(server, jobs);
+            for (int j = 0; j < jobs.size(); j++) {
+                availableCore -= jobs.getCores(j);
+                availableMemory -= jobs.getMemory(j);
+                availableDisk -= jobs.getDisk(j);
             }
+        }
 
-            // Check for best-fit
-            if (availableCore >= requiredCore && availableMemory >= requiredMemory && availableDisk >= requiredDisk) {
-                // Check if the server has bot running and waiting jobs at the same time, which
-                // means this server cannot immediately execute the current job
-                int waitingJobs = Integer.parseInt(server[7]);
-                int runningJobs = Integer.parseInt(server[8]);
-                if (!(waitingJobs > 0 && runningJobs > 0)) {
-                    if (availableCore < bestReadilyAvailableServerCore || bestReadilyAvailableServerCore == 0) {
-                        bestReadilyAvailableServerType = serverType;
-                        bestReadilyAvailableServerID = serverID;
-                        bestReadilyAvailableServerCore = availableCore;
-                    }
-                }
-            }
+        if (availableCore < requiredCore || availableMemory < requiredMemory || availableDisk < requiredDisk) {
+            return -1;
+        }
+
+        // Check if the server has both running and waiting jobs at the same time, which
+        // means this server cannot immediately execute the current job
+        int waitingJobs = cluster.getWaitingJobs(server);
+        int runningJobs = cluster.getRunningJobs(server);
+        if (waitingJobs > 0 && runningJobs > 0) {
+            return -1;
         }
+        return availableCore;
     }
 
     /**
      * Reset the scheduling information for the next job
      */
     protected void reset() {
-        jobID = "";
+        jobID = 0;
         requiredCore = 0;
         requiredMemory = 0;
         requiredDisk = 0;
-        bestReadilyAvailableServerType = "";
-        bestReadilyAvailableServerID = "";
+        bestReadilyAvailableServer = -1;
         bestReadilyAvailableServerCore = 0;
-        bestSufficientServerType = "";
-        bestSufficientServerID = "";
-        availableServers.clear();
+        bestSufficientServer = -1;
     }
 }
@@ -1,5 +1,4 @@
-import java.util.ArrayList;
-import java.util.TreeMap;
+import java.util.function.IntConsumer;
 
 /**
  * This class implements the <b> Improved Worst Fit </b> scheduling algorithm,
@@ -7,186 +6,119 @@ import java.util.TreeMap;
  * backfilling is not allowed in ds-sim.
  */
 
-public class IWFScheduler extends Scheduler {
+public class IWFScheduler implements SchedulingPolicy {
     // Information of the current job
-    String jobID = "";
+    int jobID = 0;
     int requiredCore = 0;
     int requiredMemory = 0;
     int requiredDisk = 0;
 
-    // Information of the worst readily available server
-    protected String worstReadilyAvailableServerType = "";
-    protected String worstReadilyAvailableServerID = "";
+    // Index of the worst readily available server in cluster, and its cores
+    protected int worstReadilyAvailableServer = -1;
     protected int worstReadilyAvailableServerCore = 0;
 
-    // Information of the worst sufficient server regardless of availability
-    protected String worstSufficientServerType = "";
-    protected String worstSufficientServerID = "";
+    // Index of the worst sufficient server regardless of availability, and its
+    // initial cores
+    protected int worstSufficientServer = -1;
     protected int worstSufficientServerCore = 0;
 
-    // Because booting servers do not show the scorrect number of available
-    // resources after GETS Capable call, we need to use LSTJ for them.
-    // Therefore, we need to store the available servers and check them later
-    protected ArrayList<String[]> availableServers;
-
-    // Initial resources of the servers
-    protected TreeMap<String, Integer[]> serverInitialResources;
-
-    public IWFScheduler() throws Exception {
-        super();
-        availableServers = new ArrayList<>();
-        serverInitialResources = new TreeMap<>();
-    }
+    // Reusable list of the jobs of a server
+    protected JobList jobs = new JobList();
 
     /**
-     * Schedules jobs based on the <b> Worst Fit </b> algorithm
+     * Places a job based on the <b> Worst Fit </b> algorithm
      */
     @Override
-    public void schedule() throws Exception {
-        // Start communication
-        send("HELO");
-        receive();
-        send("AUTH " + System.getProperty("user.name"));
-        receive();
-
-        do {
-            send("REDY");
-            receive();
-
-            // Ignore if receive a message other than JOBN
-            if (!latestMessage[0].equals("JOBN")) {
-                continue;
-            }
-
-            // Scan job information
-            jobID = latestMessage[2];
-            requiredCore = Integer.parseInt(latestMessage[4]);
-            requiredMemory = Integer.parseInt(latestMessage[5]);
-            requiredDisk = Integer.parseInt(latestMessage[6]);
-
-            // Get capable server records
-            send("GETS Capable " + requiredCore + " " + requiredMemory + " " + requiredDisk);
-            receive();
-            send("OK");
-
-            // Traverse all server records
-            int serverCount = Integer.parseInt(latestMessage[1]);
-            for (int i = 0; i < serverCount; i++) {
-                receive();
-
-                // Current resources of the server
-                int availableCore = Integer.parseInt(latestMessage[4]);
-                int availableMemory = Integer.parseInt(latestMessage[5]);
-                int availableDisk = Integer.parseInt(latestMessage[6]);
-
-                // GETS Capable is not guaranteed to return the intial cores of the servers at
-                // every iteration, so we have to store them before assigning these servers any
-                // job.
-                if (!serverInitialResources.containsKey(latestMessage[0])) {
-                    serverInitialResources.put(latestMessage[0],
-                            new Integer[] { availableCore, availableMemory, availableDisk });
-                }
-
-                // Find the worst sufficient server based on its initial cores
-                int serverInitialCores = serverInitialResources.get(latestMessage[0])[0];
-                if (serverInitialCores > worstSufficientServerCore) {
-                    worstSufficientServerType = latestMessage[0];
-                    worstSufficientServerID = latestMessage[1];
-                    worstSufficientServerCore = serverInitialCores;
-                }
-
-                // Store available servers for later check
-                if (availableCore >= requiredCore
-                        && availableMemory >= requiredMemory
-                        && availableDisk >= requiredDisk) {
-                    availableServers.add(latestMessage);
-                }
+    public int place(Job job, ClusterView cluster) throws Exception {
+        // Scan job information
+        jobID = job.getID();
+        requiredCore = job.getCores();
+        requiredMemory = job.getMemory();
+        requiredDisk = job.getDisk();
+
+        // The records of cluster are the capable servers
+        int serverCount = cluster.getRecordCount();
+
+        // Find the worst sufficient server based on its initial cores
+        for (int i = 0; i < serverCount; i++) {
+            int server = cluster.getRecord(i);
+            int serverInitialCores = cluster.getInitialCores(server);
+            if (serverInitialCores > worstSufficientServerCore) {
+                worstSufficientServer = server;
+                worstSufficientServerCore = serverInitialCores;
             }
+        }
 
-            // Finish receiving server records
-            send("OK");
-            receive();
+        // Find worst-fit readily available server
+        findWorstFitServer(cluster);
 
-            // Find worst-fit readily available server
-            findWorstFitServer();
+        // Schedule job
+        // If there is no readily available, schedule to the worst sufficient server
+        int server = worstReadilyAvailableServer >= 0 ? worstReadilyAvailableServer : worstSufficientServer;
+        reset();
+        return server;
+    }
 
-            // Schedule job
-            if (!worstReadilyAvailableServerType.equals("")) {
-                // If there is a readily available server, schedule to it
-                send("SCHD " + jobID + " " + worstReadilyAvailableServerType + " " + worstReadilyAvailableServerID);
-            } else {
-                // If there is no readily available, schedule to the worst sufficient server
-                send("SCHD " + jobID + " " + worstSufficientServerType + " " + worstSufficientServerID);
+    /**
+     * Lists the jobs of the booting servers whose resources seem sufficient,
+     * as booting servers do not show the resources taken by their jobs
+     */
+    @Override
+    public void selectJobLists(Job job, ClusterView cluster, IntConsumer servers) {
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
+            if (cluster.getState(server) == Cluster.BOOTING && cluster.getCores(server) >= job.getCores()
+                    && cluster.getMemory(server) >= job.getMemory() && cluster.getDisk(server) >= job.getDisk()) {
+                servers.accept(server);
             }
-            receive();
-            reset();
-        } while (!latestMessage[0].equals("NONE"));
-
-        // End communication
-        send("QUIT");
-        receive();
-        close();
+        }
     }
 
     /**
-     * Finds the worst fit server in readily available servers,
-     * i.e. <code> availableServers </code>
+     * Finds the worst fit server in readily available servers, i.e. capable
+     * servers whose current resources are sufficient for the job
      */
-    protected void findWorstFitServer() throws Exception {
-        for (String[] server : availableServers) {
-            String serverType = server[0];
-            String serverID = server[1];
-            String serverState = server[2];
+    protected void findWorstFitServer(ClusterView cluster) {
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
 
-            int availableCore;
-            int availableMemory;
-            int availableDisk;
+            // Current resources of the server
+            int availableCore = cluster.getCores(server);
+            int availableMemory = cluster.getMemory(server);
+            int availableDisk = cluster.getDisk(server);
 
-            if (serverState.equals("booting")) {
+            // Skip servers that are not readily available
+            if (availableCore < requiredCore || availableMemory < requiredMemory || availableDisk < requiredDisk) {
+                continue;
+            }
+
+            // Because booting servers do not show the correct number of available
+            // resources after GETS Capable call, their jobs are listed with LSTJ.
+            if (cluster.getState(server) == Cluster.BOOTING) {
                 // If the server is booting, recalculate its resources by subtracting the
                 // required resources of waiting jobs from the server's initial resources
-                Integer[] initialResources = serverInitialResources.get(serverType);
-                availableCore = initialResources[0];
-                availableMemory = initialResources[1];
-                availableDisk = initialResources[2];
+                availableCore = cluster.getInitialCores(server);
+                availableMemory = cluster.getInitialMemory(server);
+                availableDisk = cluster.getInitialDisk(server);
 
                 // Traverse job records
-                send("LSTJ " + serverType + " " + serverID);
-                receive();
-                send("OK");
-
-                int jobCount = Integer.parseInt(latestMessage[1]);
-                for (int i = 0; i < jobCount; i++) {
-                    receive();
-                    int _requiredCore = Integer.parseInt(latestMessage[5]);
-                    int _requiredMemory = Integer.parseInt(latestMessage[6]);
-                    int _requiredDisk = Integer.parseInt(latestMessage[7]);
-
-                    availableCore -= _requiredCore;
-                    availableMemory -= _requiredMemory;
-                    availableDisk -= _requiredDisk;
+                cluster.getJobs(server, jobs);
+                for (int j = 0; j < jobs.size(); j++) {
+                    availableCore -= jobs.getCores(j);
+                    availableMemory -= jobs.getMemory(j);
+                    availableDisk -= jobs.getDisk(j);
                 }
-
-                // Finish receiving job records
-                send("OK");
-                receive();
-            } else {
-                // Else use the stored values
-                availableCore = Integer.parseInt(server[4]);
-                availableMemory = Integer.parseInt(server[5]);
-                availableDisk = Integer.parseInt(server[6]);
             }
 
             // Check for worst-fit
             if (availableCore >= requiredCore && availableMemory >= requiredMemory && availableDisk >= requiredDisk) {
-                // Check if the server has bot running and waiting jobs at the same time, which
+                // Check if the server has both running and waiting jobs at the same time, which
                 // means this server cannot immediately execute the current job
-                int waitingJobs = Integer.parseInt(server[7]);
-                int runningJobs = Integer.parseInt(server[8]);
+                int waitingJobs = cluster.getWaitingJobs(server);
+                int runningJobs = cluster.getRunningJobs(server);
                 if (!(waitingJobs > 0 && runningJobs > 0)) {
                     if (availableCore > worstReadilyAvailableServerCore) {
-                        worstReadilyAvailableServerType = serverType;
-                        worstReadilyAvailableServerID = serverID;
+                        worstReadilyAvailableServer = server;
                         worstReadilyAvailableServerCore = availableCore;
                     }
                 }
@@ -198,16 +130,13 @@ public class IWFScheduler extends Scheduler {
      * Reset the scheduling information for the next job
      */
     protected void reset() {
-        jobID = "";
+        jobID = 0;
         requiredCore = 0;
         requiredMemory = 0;
         requiredDisk = 0;
-        worstReadilyAvailableServerType = "";
-        worstReadilyAvailableServerID = "";
+        worstReadilyAvailableServer = -1;
         worstReadilyAvailableServerCore = 0;
-        worstSufficientServerType = "";
-        worstSufficientServerID = "";
+        worstSufficientServer = -1;
         worstSufficientServerCore = 0;
-        availableServers.clear();
     }
 }
@@ -0,0 +1,54 @@
+/**
+ * This class holds the information of a job submitted by ds-server.
+ * E.g: "JOBN 2142 12 750 4 250 800" is job 12, submitted at 2142, with
+ * estimated run time 750, requiring 4 cores, 250 memory and 800 disk.
+ */
+public class Job {
+    protected int id;
+    protected int submitTime;
+    protected int estRunTime;
+    protected int cores;
+    protected int memory;
+    protected int disk;
+
+    /**
+     * Copies the information of a JOBN or JOBP message
+     */
+    public void set(Message message) {
+        set(message.getInt(2), message.getInt(1), message.getInt(3), message.getInt(4), message.getInt(5),
+                message.getInt(6));
+    }
+
+    public void set(int id, int submitTime, int estRunTime, int core, int mem, int disk) {
+        this.id = id;
+        this.submitTime = submitTime;
+        this.estRunTime = estRunTime;
+        this.cores = core;
+        this.memory = mem;
+        this.disk = disk;
+    }
+
+    public int getID() {
+        return id;
+    }
+
+    public int getSubmitTime() {
+        return submitTime;
+    }
+
+    public int getEstRunTime() {
+        return estRunTime;
+    }
+
+    public int getCores() {
+        return cores;
+    }
+
+    public int getMemory() {
+        return memory;
+    }
+
+    public int getDisk() {
+        return disk;
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+/**
+ * This class is a reusable list of job records, in the format of LSTJ
+ * records, kept in primitive arrays.
+ * E.g: the record "2142 2 12 60 750 4 250 800" is job 2142, running (state
+ * 2), submitted at 12, started at 60, estimated run time 750, requiring 4
+ * cores, 250 memory and 800 disk.
+ */
+public class JobList {
+    // Job states
+    public static final int WAITING = 1;
+    public static final int RUNNING = 2;
+
+    protected int count;
+    protected int[] ids;
+    protected int[] states;
+    protected int[] submitTimes;
+    protected int[] startTimes;
+    protected int[] estRunTimes;
+    protected int[] cores;
+    protected int[] memory;
+    protected int[] disks;
+
+    public JobList() {
+        ids = new int[16];
+        states = new int[16];
+        submitTimes = new int[16];
+        startTimes = new int[16];
+        estRunTimes = new int[16];
+        cores = new int[16];
+        memory = new int[16];
+        disks = new int[16];
+    }
+
+    /**
+     * Removes all jobs from the list
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Adds a job from a LSTJ record
+     */
+    public void add(Message message) {
+        add(message.getInt(0), message.getInt(1), message.getInt(2), message.getInt(3), message.getInt(4),
+                message.getInt(5), message.getInt(6), message.getInt(7));
+    }
+
+    /**
+     * Adds a job to the list
+     */
+    public void add(int id, int state, int submitTime, int startTime, int estRunTime,
+            int core, int mem, int disk) {
+        if (count == ids.length) {
+            int newLength = count * 2;
+            ids = Arrays.copyOf(ids, newLength);
+            states = Arrays.copyOf(states, newLength);
+            submitTimes = Arrays.copyOf(submitTimes, newLength);
+            startTimes = Arrays.copyOf(startTimes, newLength);
+            estRunTimes = Arrays.copyOf(estRunTimes, newLength);
+            cores = Arrays.copyOf(cores, newLength);
+            memory = Arrays.copyOf(memory, newLength);
+            disks = Arrays.copyOf(disks, newLength);
+        }
+        ids[count] = id;
+        states[count] = state;
+        submitTimes[count] = submitTime;
+        startTimes[count] = startTime;
+        estRunTimes[count] = estRunTime;
+        cores[count] = core;
+        memory[count] = mem;
+        disks[count] = disk;
+        count++;
+    }
+
+    /**
+     * Adds all jobs of another list to the list
+     */
+    public void addAll(JobList jobs) {
+        for (int i = 0; i < jobs.count; i++) {
+            add(jobs.ids[i], jobs.states[i], jobs.submitTimes[i], jobs.startTimes[i], jobs.estRunTimes[i],
+                    jobs.cores[i], jobs.memory[i], jobs.disks[i]);
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getID(int i) {
+        return ids[i];
+    }
+
+    public int getState(int i) {
+        return states[i];
+    }
+
+    public int getSubmitTime(int i) {
+        return submitTimes[i];
+    }
+
+    public int getStartTime(int i) {
+        return startTimes[i];
+    }
+
+    public int getEstRunTime(int i) {
+        return estRunTimes[i];
+    }
+
+    public int getCores(int i) {
+        return cores[i];
+    }
+
+    public int getMemory(int i) {
+        return memory[i];
+    }
+
+    public int getDisk(int i) {
+        return disks[i];
+    }
+}
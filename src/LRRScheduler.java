@@ -1,7 +1,7 @@
 /**
  * This class implements the <b> Largest Round Robin </b> scheduling algorithm.
  */
-public class LRRScheduler extends Scheduler {
+public class LRRScheduler implements SchedulingPolicy {
     // Information of the largest server type
     protected String largestServerType;
     protected int largestServerTypeCount;
@@ -9,9 +9,7 @@ public class LRRScheduler extends Scheduler {
     // ID of the server to schedule the next job to
     protected int currentServerID;
 
-    public LRRScheduler() throws Exception {
-        super();
-
+    public LRRScheduler() {
         // No largest server type yet
         largestServerType = "";
         largestServerTypeCount = 0;
@@ -21,70 +19,46 @@ public class LRRScheduler extends Scheduler {
     }
 
     /**
-     * Schedules jobs based on the <b> Largest Round Robin </b> algorithm
+     * Places a job based on the <b> Largest Round Robin </b> algorithm
      */
     @Override
-    public void schedule() throws Exception {
-        // Start communication
-        send("HELO");
-        receive();
-        send("AUTH " + System.getProperty("user.name"));
-        receive();
-
-        do {
-            send("REDY");
-            receive();
-
-            // Ignore if receive a message other than JOBN
-            if (!latestMessage[0].equals("JOBN")) {
-                continue;
-            }
-
-            String jobID = latestMessage[2];
-
-            // Find largest server type if not found already
-            if (largestServerType.equals("")) {
-                findLargestServerType();
-            }
+    public int place(Job job, ClusterView cluster) throws Exception {
+        // Find largest server type if not found already
+        if (largestServerType.equals("")) {
+            findLargestServerType(cluster);
+        }
+        // The resources of a type are unknown while all its servers are unavailable
+        if (largestServerTypeCount == 0) {
+            return -1;
+        }
 
-            // Schedule job and move to the next server ID for next job
-            send("SCHD " + jobID + " " + largestServerType + " " + currentServerID);
-            currentServerID = (currentServerID + 1) % largestServerTypeCount;
-            receive();
-        } while (!latestMessage[0].equals("NONE"));
+        // Schedule job and move to the next server ID for next job
+        int server = cluster.indexOf(largestServerType, currentServerID);
+        currentServerID = (currentServerID + 1) % largestServerTypeCount;
+        return server;
+    }
 
-        // End communication
-        send("QUIT");
-        receive();
-        close();
+    /**
+     * The largest server type does not depend on the job, so capable servers
+     * are not needed
+     */
+    @Override
+    public boolean usesCapableServers() {
+        return false;
     }
 
     /**
      * Finds the largest server type and the number of servers of that type
      */
-    protected void findLargestServerType() throws Exception {
-        // Get server records
-        send("GETS All");
-        receive();
-        send("OK");
-
-        int serverCount = Integer.parseInt(latestMessage[1]);
+    protected void findLargestServerType(ClusterView cluster) {
         int curLargestCoreCount = 0;
-        // Iterate through all records to find the server having most CPU cores
-        for (int i = 0; i < serverCount; i++) {
-            receive();
-
-            if (curLargestCoreCount < Integer.parseInt(latestMessage[4])) {
-                largestServerType = latestMessage[0];
-                largestServerTypeCount = 1;
-                curLargestCoreCount = Integer.parseInt(latestMessage[4]);
-            } else if (largestServerType.equals(latestMessage[0])) {
-                largestServerTypeCount++;
+        // Iterate through all server types to find the one having most CPU cores
+        for (int type = 0; type < cluster.getTypeCount(); type++) {
+            if (curLargestCoreCount < cluster.getTypeCores(type)) {
+                largestServerType = cluster.getTypeName(type);
+                largestServerTypeCount = cluster.getTypeLimit(type);
+                curLargestCoreCount = cluster.getTypeCores(type);
             }
         }
-
-        // Finish receiving server records
-        send("OK");
-        receive();
     }
 }
@@ -1,6 +1,4 @@
-import java.util.ArrayList;
-import java.util.List;
-import java.util.TreeMap;
+import java.util.function.IntConsumer;
 
 /**
  * <p>
@@ -28,307 +26,323 @@ import java.util.TreeMap;
  * and there is at least an inactive server that has sufficient resources for
  * the job, schedule it to this server.
  * </p>
+ *
+ * <p>
+ * With runtime correction, waiting times are estimated with the run times
+ * corrected by what has been learnt from completed jobs.
+ * </p>
+ *
+ * <p>
+ * In warm pool mode, the cores jobs are expected to request during a boot are
+ * estimated from their arrival rate. While the booted servers have fewer cores
+ * free, a long job boots an inactive server instead, so short jobs find
+ * booted servers rather than waiting for a boot.
+ * </p>
+ *
+ * <p>
+ * In migration mode, when a job completes and leaves its server idle, the
+ * waiting jobs expected to start the latest on other servers are moved to it
+ * with MIGJ while it has resources for them.
+ * </p>
  */
-public class LWTScheduler extends Scheduler {
+public class LWTScheduler implements SchedulingPolicy {
     // Information of the current job
-    String jobID = "";
+    int jobID = 0;
     int submitTime = 0;
     int estimatedRunTime = 0;
     int requiredCore = 0;
     int requiredMemory = 0;
     int requiredDisk = 0;
 
-    // Information of the server to schedule the current job to, i.e. best server
-    protected String bestServerType = "";
-    protected String bestServerID = "";
+    // Index of the server to schedule the current job to, i.e. best server
+    protected int bestServer = -1;
+
+    // Timelines of the local queues of the servers
+    protected Timeline timeline;
+
+    // Whether waiting jobs are migrated to servers that become idle
+    // E.g: java -Dds.migrate=true Client lwt
+    protected boolean migrationMode;
+
+    // In warm pool mode, the mean time between job submissions and the mean
+    // cores of a job are estimated with exponentially weighted moving averages.
+    // A job is long if its estimated run time is at least LONG_JOB_BOOTS times
+    // the bootup time, so that a boot delays it by a small fraction of its run.
+    // E.g: java -Dds.warmpool=true Client lwt
+    protected static final int LONG_JOB_BOOTS = 10;
+    protected static final double ARRIVAL_WEIGHT = 1.0 / 16;
+    protected boolean warmPoolMode;
+    protected int lastSubmitTime = -1;
+    protected double meanArrivalInterval;
+    protected double meanJobCores;
+
+    // Options of the run, and the candidate servers of the current job
+    protected PolicyContext context = new PolicyContext();
+
+    // Reusable list of the jobs of a server
+    protected JobList jobs = new JobList();
+
+    public LWTScheduler() {
+        migrationMode = Boolean.getBoolean("ds.migrate");
+        warmPoolMode = Boolean.getBoolean("ds.warmpool");
+    }
 
-    // Because this algorithm requires examining the servers' local queue, we need
-    // to use the LSTJ command. Since LSTJ cannot be used when GETS is running, we
-    // need to store the server information for later check.
-    protected List<String[]> capableServers;
+    @Override
+    public void setContext(PolicyContext context) {
+        this.context = context;
+    }
 
-    // Initial resources of different server types
-    protected TreeMap<String, Integer[]> serverInitialResources;
+    /**
+     * Places a job based on the <b> Least Waiting Time </b> algorithm
+     */
+    @Override
+    public int place(Job job, ClusterView cluster) throws Exception {
+        // Scan job information
+        submitTime = job.getSubmitTime();
+        jobID = job.getID();
+        estimatedRunTime = job.getEstRunTime();
+        if (context.getRuntimeModel() != null) {
+            estimatedRunTime = context.getRuntimeModel().correct(estimatedRunTime, -1);
+        }
+        requiredCore = job.getCores();
+        requiredMemory = job.getMemory();
+        requiredDisk = job.getDisk();
+        if (warmPoolMode) {
+            updateArrivalRate();
+        }
+
+        // Find best server
+        findBestServer(cluster);
 
-    public LWTScheduler() throws Exception {
-        super();
-        capableServers = new ArrayList<>();
-        serverInitialResources = new TreeMap<>();
+        // Schedule job
+        int server = bestServer;
+        reset();
+        return server;
     }
 
     /**
-     * Schedules jobs based on the <b> Least Waiting Time </b> algorithm
+     * Lists the jobs of the capable servers that are booted or booting, whose
+     * waiting times are estimated from them, unless a capable server is idle
      */
     @Override
-    public void schedule() throws Exception {
-        // Start communication
-        send("HELO");
-        receive();
-        send("AUTH " + System.getProperty("user.name"));
-        receive();
-
-        do {
-            send("REDY");
-            receive();
-
-            // Ignore if receive a message other than JOBN
-            if (!latestMessage[0].equals("JOBN")) {
-                continue;
+    public void selectJobLists(Job job, ClusterView cluster, IntConsumer servers) {
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            if (cluster.getState(cluster.getRecord(i)) == Cluster.IDLE) {
+                return;
+            }
+        }
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
+            int state = cluster.getState(server);
+            if (state == Cluster.ACTIVE || state == Cluster.BOOTING) {
+                servers.accept(server);
             }
+        }
+    }
 
-            // Scan job information
-            submitTime = Integer.parseInt(latestMessage[1]);
-            jobID = latestMessage[2];
-            estimatedRunTime = Integer.parseInt(latestMessage[3]);
-            requiredCore = Integer.parseInt(latestMessage[4]);
-            requiredMemory = Integer.parseInt(latestMessage[5]);
-            requiredDisk = Integer.parseInt(latestMessage[6]);
-
-            // Get capable server records
-            send("GETS Capable " + requiredCore + " " + requiredMemory + " " + requiredDisk);
-            receive();
-            send("OK");
-
-            // Traverse all server records
-            int serverCount = Integer.parseInt(latestMessage[1]);
-            for (int i = 0; i < serverCount; i++) {
-                receive();
-
-                // Scan server information
-                String serverType = latestMessage[0];
-                int availableCore = Integer.parseInt(latestMessage[4]);
-                int availableMemory = Integer.parseInt(latestMessage[5]);
-                int availableDisk = Integer.parseInt(latestMessage[6]);
-
-                // Store the initial resources of this server type
-                if (!serverInitialResources.containsKey(serverType)) {
-                    serverInitialResources.put(serverType,
-                            new Integer[] { availableCore, availableMemory, availableDisk });
-                }
+    /**
+     * Find the best server in the capable servers, i.e. the records of the
+     * latest GETS reply
+     */
+    protected void findBestServer(ClusterView cluster) {
+        if (timeline == null) {
+            createTimeline(cluster);
+        }
 
-                // Store capable servers for later check
-                capableServers.add(latestMessage);
-            }
+        int firstInactiveServer = -1;
+
+        int minWaitingTime = Integer.MAX_VALUE;
 
-            // Finish receiving server records
-            send("OK");
-            receive();
+        // A long job boots an inactive server while the warm pool is short
+        int warmPoolServer = warmPoolMode ? findWarmPoolServer(cluster) : -1;
+        if (warmPoolServer >= 0) {
+            bestServer = warmPoolServer;
+            return;
+        }
 
-            // Find best server
-            findBestServer();
+        context.clearCandidates();
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
+            int state = cluster.getState(server);
+
+            if (state == Cluster.IDLE) {
+                // An idle server has no waiting time
+                bestServer = server;
+                return;
+            } else if (state == Cluster.INACTIVE && firstInactiveServer < 0) {
+                firstInactiveServer = server;
+            } else if (state == Cluster.ACTIVE || state == Cluster.BOOTING) {
+                context.addCandidate(server);
+            }
+        }
 
-            // Schedule job
-            send("SCHD " + jobID + " " + bestServerType + " " + bestServerID);
+        context.scoreCandidates(candidate -> estimateWaitingTime(candidate, cluster));
 
-            receive();
-            reset();
-        } while (!latestMessage[0].equals("NONE"));
+        for (int i = 0; i < context.getCandidateCount(); i++) {
+            if (context.getScore(i) < minWaitingTime) {
+                bestServer = context.getCandidate(i);
+                minWaitingTime = context.getScore(i);
+            }
+        }
 
-        // End communication
-        send("QUIT");
-        receive();
-        close();
+        if (minWaitingTime > 2 * estimatedRunTime && firstInactiveServer >= 0) {
+            bestServer = firstInactiveServer;
+        }
     }
 
     /**
-     * Find the best server in <b>capableServers</b>
+     * Updates the mean time between submissions and the mean cores of a job
+     * with the current job
      */
-    protected void findBestServer() throws Exception {
-        String firstInactiveServerType = "";
-        String firstInactiveServerID = "";
-
-        int minWaitingTime = Integer.MAX_VALUE;
-
-        for (String[] server : capableServers) {
-            String serverType = server[0];
-            String serverID = server[1];
-            String state = server[2];
-
-            List<String[]> runningJobs = new ArrayList<>();
-            List<String[]> waitingJobs = new ArrayList<>();
-
-            if (state.equals("idle")) {
-                bestServerType = serverType;
-                bestServerID = serverID;
-                minWaitingTime = 0;
-                break;
-            } else if (state.equals("inactive") && firstInactiveServerType.equals("")) {
-                firstInactiveServerType = serverType;
-                firstInactiveServerID = serverID;
-            } else if (state.equals("active") || state.equals("booting")) {
-
-                // Traverse job records
-                send("LSTJ " + serverType + " " + serverID);
-                receive();
-                send("OK");
-
-                int jobCount = Integer.parseInt(latestMessage[1]);
-                for (int i = 0; i < jobCount; i++) {
-                    receive();
-
-                    if (latestMessage[1].equals("2")) {
-                        runningJobs.add(latestMessage);
-                    } else {
-                        waitingJobs.add(latestMessage);
-                    }
-                }
-
-                // Finish receiving job records
-                send("OK");
-                receive();
-
-                int waitingTime = estimateWaitingTime(runningJobs, waitingJobs, serverType, state);
+    protected void updateArrivalRate() {
+        if (lastSubmitTime < 0) {
+            meanJobCores = requiredCore;
+        } else if (submitTime >= lastSubmitTime) {
+            meanArrivalInterval += ARRIVAL_WEIGHT * (submitTime - lastSubmitTime - meanArrivalInterval);
+            meanJobCores += ARRIVAL_WEIGHT * (requiredCore - meanJobCores);
+        }
+        lastSubmitTime = Math.max(lastSubmitTime, submitTime);
+    }
 
-                if (waitingTime < minWaitingTime) {
-                    bestServerType = serverType;
-                    bestServerID = serverID;
+    /**
+     * Returns the first inactive capable server if the current job is long and
+     * the warm pool is short, or -1 otherwise. The warm pool is the free cores
+     * of the capable servers that are booted or booting without waiting jobs.
+     * It is short if it has fewer cores than jobs are expected to request
+     * during the boot of the server.
+     */
+    protected int findWarmPoolServer(ClusterView cluster) {
+        int firstInactiveServer = -1;
+        int warmCores = 0;
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
+            int state = cluster.getState(server);
+            if (state == Cluster.INACTIVE) {
+                if (firstInactiveServer < 0) {
+                    firstInactiveServer = server;
                 }
-
+            } else if (state != Cluster.UNAVAILABLE && cluster.getWaitingJobs(server) == 0) {
+                warmCores += cluster.getCores(server);
             }
         }
+        if (firstInactiveServer < 0) {
+            return -1;
+        }
+
+        int bootupTime = cluster.getBootupTime(cluster.getType(firstInactiveServer));
+        if (estimatedRunTime < LONG_JOB_BOOTS * bootupTime) {
+            return -1;
+        }
+        double expectedCores = meanJobCores * bootupTime / Math.max(meanArrivalInterval, 1);
+        return warmCores < expectedCores ? firstInactiveServer : -1;
+    }
 
-        if (minWaitingTime > 2 * estimatedRunTime && !firstInactiveServerType.equals("")) {
-            bestServerType = firstInactiveServerType;
-            bestServerID = firstInactiveServerID;
+    /**
+     * Creates the timelines of the servers, correcting run times if a runtime
+     * model is learnt
+     */
+    protected void createTimeline(ClusterView cluster) {
+        timeline = new Timeline(cluster.getServerCount());
+        if (context.getRuntimeModel() != null) {
+            timeline.setRuntimeModel(context.getRuntimeModel(), cluster);
         }
     }
 
     /**
      * Estimate the waiting time if assign the current job to a server
-     * The estimation works similarly to how ds-sim simulates events
+     * The estimation works similarly to how ds-sim simulates events, using the
+     * timeline of the server's local queue. In shadow mode, the timeline is
+     * only rebuilt when the local queue changes. Otherwise, it is rebuilt from
+     * the jobs listed by LSTJ.
      * 
-     * @param runningJobs List of running jobs currently in the server
-     * @param waitingJobs List of waiting jobs currently in the server
-     * @param serverType  Type of the server
-     * @param state       State of the server
-     * @return A list contains 2 element: estimated waiting time and available cores
-     *         at the time of allocating the current job to this server
+     * @param candidate Index of the candidate server
+     * @param cluster   The servers
+     * @return Estimated waiting time of the current job on this server
      */
-    protected int estimateWaitingTime(
-            List<String[]> runningJobs,
-            List<String[]> waitingJobs,
-            String serverType,
-            String state) {
-        Integer[] initialResources = serverInitialResources.get(serverType);
-        int availableCore = initialResources[0];
-        int availableMemory = initialResources[1];
-        int availableDisk = initialResources[2];
-
-        int waitingTime = 0;
-
-        // If the server is booting, increase waiting time by bootup time
-        // Otherwise, recalculate estimated remaining runtime of running jobs
-        if (state.equals("booting")) {
-            int bootupTime = Integer.parseInt(waitingJobs.get(0)[3]) - submitTime;
-            waitingTime += bootupTime;
-        } else {
-            int jobCount = runningJobs.size();
-            for (int i = 0; i < jobCount; i++) {
-                String[] job = runningJobs.remove(0);
-
-                // Estimate remaining runtime
-                int startTime = Integer.parseInt(job[3]);
-                int runTime = Integer.parseInt(job[4]);
-                int remainRunTime = runTime - (submitTime - startTime);
-
-                if (remainRunTime < 0) {
-                    remainRunTime = 0;
-                }
-
-                job[4] = String.valueOf(remainRunTime);
-                runningJobs.add(job);
+    protected int estimateWaitingTime(int candidate, ClusterView cluster) {
+        int server = context.getCandidate(candidate);
+        int version = context.hasShadowState() ? cluster.getVersion(server) : -1;
+        if (!timeline.isValid(server, version, submitTime)) {
+            JobList jobs = context.getCandidateJobs(candidate);
+            cluster.getJobs(server, jobs);
+            timeline.build(server, version, jobs, cluster.getState(server) == Cluster.BOOTING,
+                    cluster.getStartTime(server), cluster.getInitialCores(server),
+                    cluster.getInitialMemory(server), cluster.getInitialDisk(server), submitTime);
+        }
 
-                // Take resources from the server
-                int _requiredCore = Integer.parseInt(job[5]);
-                int _requiredMemory = Integer.parseInt(job[6]);
-                int _requiredDisk = Integer.parseInt(job[7]);
+        int startTime = timeline.getStartTime(server, submitTime, requiredCore, requiredMemory, requiredDisk);
+        return startTime == Integer.MAX_VALUE ? Integer.MAX_VALUE : startTime - submitTime;
+    }
 
-                availableCore -= _requiredCore;
-                availableDisk -= _requiredDisk;
-                availableMemory -= _requiredMemory;
-            }
+    /**
+     * Rebalances the local queues when a job completion leaves its server idle
+     */
+    @Override
+    public int getMigrationTarget(Message message, ClusterView cluster) {
+        if (!migrationMode || !message.is("JCPL")) {
+            return -1;
         }
 
-        // Simulating events similar to ds-sim
-        while (true) {
-            // Check if the first job in the waiting list can be executed with the current
-            // resources. If it can, execute it, and check for the next job in the list.
-            // Otherwise, increase the waiting time until the next running job is finished
-            if (!waitingJobs.isEmpty()) {
-                String[] job = waitingJobs.get(0);
-                int _requiredCore = Integer.parseInt(job[5]);
-                int _requiredMemory = Integer.parseInt(job[6]);
-                int _requiredDisk = Integer.parseInt(job[7]);
-
-                if (availableCore >= _requiredCore
-                        && availableMemory >= _requiredMemory
-                        && availableDisk >= _requiredDisk) {
-                    waitingJobs.remove(0);
-                    runningJobs.add(job);
-                    availableCore -= _requiredCore;
-                    availableMemory -= _requiredMemory;
-                    availableDisk -= _requiredDisk;
-                    continue;
-                }
-            } else {
-                // If there is no waiting jobs, try execute the current job. If it can be
-                // executed, the estimation is done
-                if (availableCore >= requiredCore
-                        && availableDisk >= requiredDisk
-                        && availableMemory >= requiredMemory) {
-                    availableCore -= requiredCore;
-                    break;
-                }
-            }
-
-            // Get the next job expected to be completed
-            int minRunTime = Integer.MAX_VALUE;
-            for (String[] job : runningJobs) {
-                int runTime = Integer.parseInt(job[4]);
+        // E.g: JCPL 2345 12 juju 0
+        int server = cluster.indexOf(message.getString(3), message.getInt(4));
+        return server >= 0 && cluster.getState(server) == Cluster.IDLE ? server : -1;
+    }
 
-                if (runTime < minRunTime) {
-                    minRunTime = runTime;
-                }
+    /**
+     * Chooses the waiting job to migrate to an idle server, latest expected
+     * start first. Only the last waiting job of a server is moved, which does
+     * not delay the jobs before it in strict order. The waiting jobs are found
+     * from the shadow state, and without shadow mode, the jobs of a server are
+     * listed with LSTJ before one is migrated.
+     *
+     * @param target index of the idle server
+     */
+    @Override
+    public int chooseMigratedJob(int target, ClusterView cluster) {
+        if (timeline == null) {
+            createTimeline(cluster);
+        }
+        int time = cluster.getCurrentTime();
+
+        // Find the last waiting job that is expected to start the latest and
+        // can start on the target now
+        int source = -1;
+        int latestStartTime = time;
+        for (int server = 0; server < cluster.getServerCount(); server++) {
+            int jobID = cluster.getLastWaitingJob(server);
+            if (server == target || jobID < 0
+                    || cluster.getJobCores(jobID) > cluster.getCores(target)
+                    || cluster.getJobMemory(jobID) > cluster.getMemory(target)
+                    || cluster.getJobDisk(jobID) > cluster.getDisk(target)) {
+                continue;
             }
 
-            waitingTime += minRunTime;
-            int count = runningJobs.size();
-            for (int i = 0; i < count; i++) {
-                String[] job = runningJobs.remove(0);
-                int runTime = Integer.parseInt(job[4]);
-                int remainRunTime = runTime - minRunTime;
-
-                if (remainRunTime == 0) {
-                    int freedCore = Integer.parseInt(job[5]);
-                    int freedMemory = Integer.parseInt(job[6]);
-                    int freedDisk = Integer.parseInt(job[7]);
-                    availableCore += freedCore;
-                    availableMemory += freedMemory;
-                    availableDisk += freedDisk;
-                } else {
-                    job[4] = String.valueOf(remainRunTime);
-                    runningJobs.add(job);
-                }
+            int version = cluster.getVersion(server);
+            if (!timeline.isValid(server, version, time)) {
+                cluster.getJobs(server, jobs);
+                timeline.build(server, version, jobs, cluster.getState(server) == Cluster.BOOTING,
+                        cluster.getStartTime(server), cluster.getInitialCores(server),
+                        cluster.getInitialMemory(server), cluster.getInitialDisk(server), time);
+            }
+            if (timeline.getLastStartTime(server) > latestStartTime) {
+                source = server;
+                latestStartTime = timeline.getLastStartTime(server);
             }
-
         }
-
-        return waitingTime;
+        return source >= 0 ? cluster.getLastWaitingJob(source) : -1;
     }
 
     /**
      * Reset the scheduling information for the next job
      */
     protected void reset() {
-        jobID = "";
+        jobID = 0;
         submitTime = 0;
         estimatedRunTime = 0;
         requiredCore = 0;
         requiredMemory = 0;
         requiredDisk = 0;
 
-        bestServerType = "";
-        bestServerID = "";
-        capableServers.clear();
+        bestServer = -1;
     }
 }
@@ -0,0 +1,108 @@
+import java.util.Arrays;
+
+/**
+ * This class finds an assignment of the rows of a cost matrix to distinct
+ * columns with the least total cost, using the Hungarian algorithm in
+ * O(n^2 m) time for n rows and m >= n columns. Its arrays are reused between
+ * assignments.
+ */
+public class Matching {
+    // Cost of a row and column that must not be matched. It is low enough for
+    // sums of costs not to overflow.
+    public static final long INFEASIBLE = 1L << 40;
+
+    // Potentials of the rows and columns, indexed from 1 with column 0 as the
+    // root of each augmenting path
+    protected long[] rowPotentials = new long[1];
+    protected long[] columnPotentials = new long[1];
+
+    // For each column, the row matched to it (from 1, 0 if none), the least
+    // reduced cost reaching it, the previous column on the augmenting path,
+    // and whether it is on the path
+    protected int[] columnRows = new int[1];
+    protected long[] minCosts = new long[1];
+    protected int[] previousColumns = new int[1];
+    protected boolean[] visited = new boolean[1];
+
+    /**
+     * Matches each row to a distinct column with the least total cost
+     *
+     * @param costs       the cost of row i and column j at i * columnCount + j
+     * @param rowCount    the number of rows
+     * @param columnCount the number of columns, at least rowCount
+     * @param rowColumns  receives the column matched to each row
+     */
+    public void solve(long[] costs, int rowCount, int columnCount, int[] rowColumns) {
+        ensureCapacity(rowCount, columnCount);
+        Arrays.fill(rowPotentials, 0, rowCount + 1, 0);
+        Arrays.fill(columnPotentials, 0, columnCount + 1, 0);
+        Arrays.fill(columnRows, 0, columnCount + 1, 0);
+
+        for (int row = 1; row <= rowCount; row++) {
+            // Grow an augmenting path from the row
+            columnRows[0] = row;
+            int column = 0;
+            Arrays.fill(minCosts, 0, columnCount + 1, Long.MAX_VALUE);
+            Arrays.fill(visited, 0, columnCount + 1, false);
+            do {
+                visited[column] = true;
+                int pathRow = columnRows[column];
+                int base = (pathRow - 1) * columnCount - 1;
+                long delta = Long.MAX_VALUE;
+                int nextColumn = 0;
+                for (int j = 1; j <= columnCount; j++) {
+                    if (visited[j]) {
+                        continue;
+                    }
+                    long reducedCost = costs[base + j] - rowPotentials[pathRow] - columnPotentials[j];
+                    if (reducedCost < minCosts[j]) {
+                        minCosts[j] = reducedCost;
+                        previousColumns[j] = column;
+                    }
+                    if (minCosts[j] < delta) {
+                        delta = minCosts[j];
+                        nextColumn = j;
+                    }
+                }
+                for (int j = 0; j <= columnCount; j++) {
+                    if (visited[j]) {
+                        rowPotentials[columnRows[j]] += delta;
+                        columnPotentials[j] -= delta;
+                    } else {
+                        minCosts[j] -= delta;
+                    }
+                }
+                column = nextColumn;
+            } while (columnRows[column] != 0);
+
+            // Flip the matching along the path
+            do {
+                int previousColumn = previousColumns[column];
+                columnRows[column] = columnRows[previousColumn];
+                column = previousColumn;
+            } while (column != 0);
+        }
+
+        for (int j = 1; j <= columnCount; j++) {
+            if (columnRows[j] != 0) {
+                rowColumns[columnRows[j] - 1] = j - 1;
+            }
+        }
+    }
+
+    /**
+     * Grows the arrays for a matrix of the given size
+     */
+    protected void ensureCapacity(int rowCount, int columnCount) {
+        if (rowPotentials.length <= rowCount) {
+            rowPotentials = new long[rowCount + 1];
+        }
+        if (columnPotentials.length <= columnCount) {
+            columnPotentials = new long[columnCount + 1];
+            columnRows = new int[columnCount + 1];
+            minCosts = new long[columnCount + 1];
+            previousColumns = new int[columnCount + 1];
+            visited = new boolean[columnCount + 1];
+        }
+    }
+}
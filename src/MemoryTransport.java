@@ -0,0 +1,76 @@
+/**
+ * This class is an in-memory transport to a MockServer running in the same
+ * process, so a simulation runs without ds-server or sockets. Messages are
+ * handled by the server as soon as they are written, and its replies are
+ * buffered as bytes to be read by the client.
+ * E.g: java -Dds.config=configs/other/config20-short-med.xml Client bf
+ */
+public class MemoryTransport implements Transport {
+    protected MockServer server;
+
+    // Replies of the server not yet read, stored in replies[start, end)
+    protected byte[] replies;
+    protected int start;
+    protected int end;
+
+    public MemoryTransport(MockServer server) {
+        this.server = server;
+        replies = new byte[8192];
+    }
+
+    @Override
+    public void write(String message) {
+        server.handle(message);
+
+        String reply;
+        while ((reply = server.poll()) != null) {
+            int length = reply.length();
+            if (end + length + 1 > replies.length) {
+                // Move the unread replies to the front, growing the buffer if necessary
+                int unread = end - start;
+                byte[] newReplies = unread + length + 1 > replies.length
+                        ? new byte[Math.max(replies.length * 2, unread + length + 1)]
+                        : replies;
+                System.arraycopy(replies, start, newReplies, 0, unread);
+                replies = newReplies;
+                start = 0;
+                end = unread;
+            }
+
+            // Messages of ds-sim are ASCII
+            for (int i = 0; i < length; i++) {
+                replies[end++] = (byte) reply.charAt(i);
+            }
+            replies[end++] = '\n';
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (start == end) {
+            if (server.isFinished()) {
+                return -1;
+            }
+            throw new IllegalStateException("Waiting for a reply to no message");
+        }
+
+        int count = Math.min(length, end - start);
+        System.arraycopy(replies, start, buffer, offset, count);
+        start += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+        start = 0;
+        end = 0;
+    }
+
+    public MockServer getServer() {
+        return server;
+    }
+}
@@ -0,0 +1,268 @@
+import java.io.EOFException;
+
+/**
+ * This class holds the latest message received from ds-server. Bytes are read
+ * into a reusable buffer and the space-separated fields of the message are
+ * accessed by index, so receiving and parsing a message does not create any
+ * String or array objects.
+ */
+public class Message {
+    // Buffer of bytes read from ds-server. The current message is stored in
+    // buffer[start, end) and bytes after end belong to the next messages.
+    protected byte[] buffer;
+    protected int start;
+    protected int end;
+    protected int limit;
+
+    // Positions of the fields of the current message in the buffer
+    // E.g: If the message is "JOBN 2142 12 750 4 250 800"
+    // then the field at index 2 is buffer[fieldStarts[2], fieldEnds[2]) = "12"
+    protected int[] fieldStarts;
+    protected int[] fieldEnds;
+    protected int fieldCount;
+
+    // Open-addressing table of interned strings, e.g. server type names
+    protected String[] internedStrings;
+    protected int internedCount;
+
+    public Message() {
+        buffer = new byte[8192];
+        fieldStarts = new int[16];
+        fieldEnds = new int[16];
+        internedStrings = new String[64];
+    }
+
+    /**
+     * Reads the next message, i.e. the next line, from a transport
+     *
+     * @param in the transport to read from
+     */
+    public void read(Transport in) throws Exception {
+        readLine(in);
+        parse();
+    }
+
+    /**
+     * Reads the next line from a transport without splitting it into fields.
+     * parse() must be called before its fields are accessed.
+     *
+     * @param in the transport to read from
+     */
+    public void readLine(Transport in) throws Exception {
+        // Skip the current message
+        start = end < limit ? end + 1 : limit;
+
+        // Find the end of the next message, reading more bytes if necessary
+        int scanned = start;
+        while (true) {
+            while (scanned < limit && buffer[scanned] != '\n') {
+                scanned++;
+            }
+            if (scanned < limit) {
+                break;
+            }
+
+            // Move the incomplete message to the front of the buffer
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, limit - start);
+                scanned -= start;
+                limit -= start;
+                start = 0;
+            }
+
+            // Grow the buffer if the message does not fit
+            if (limit == buffer.length) {
+                byte[] newBuffer = new byte[buffer.length * 2];
+                System.arraycopy(buffer, 0, newBuffer, 0, limit);
+                buffer = newBuffer;
+            }
+
+            int count = in.read(buffer, limit, buffer.length - limit);
+            if (count < 0) {
+                throw new EOFException("Connection closed by ds-server");
+            }
+            limit += count;
+        }
+
+        end = scanned;
+    }
+
+    /**
+     * Splits the current message into fields with space character as the
+     * delimiter
+     */
+    protected void parse() {
+        int messageEnd = end;
+        // Ignore the carriage return of a CRLF line ending
+        if (messageEnd > start && buffer[messageEnd - 1] == '\r') {
+            messageEnd--;
+        }
+
+        fieldCount = 0;
+        int i = start;
+        while (i < messageEnd) {
+            while (i < messageEnd && buffer[i] == ' ') {
+                i++;
+            }
+            if (i == messageEnd) {
+                break;
+            }
+
+            if (fieldCount == fieldStarts.length) {
+                int[] newStarts = new int[fieldCount * 2];
+                int[] newEnds = new int[fieldCount * 2];
+                System.arraycopy(fieldStarts, 0, newStarts, 0, fieldCount);
+                System.arraycopy(fieldEnds, 0, newEnds, 0, fieldCount);
+                fieldStarts = newStarts;
+                fieldEnds = newEnds;
+            }
+
+            fieldStarts[fieldCount] = i;
+            while (i < messageEnd && buffer[i] != ' ') {
+                i++;
+            }
+            fieldEnds[fieldCount] = i;
+            fieldCount++;
+        }
+    }
+
+    /**
+     * Returns the number of fields in the current message
+     */
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /**
+     * Returns whether the first field of the current message is a keyword,
+     * e.g. <code> message.is("JOBN") </code>
+     */
+    public boolean is(String keyword) {
+        return fieldEquals(0, keyword);
+    }
+
+    /**
+     * Returns whether a field of the current message equals a string
+     *
+     * @param index index of the field
+     * @param value the string to compare to
+     */
+    public boolean fieldEquals(int index, String value) {
+        if (index >= fieldCount) {
+            return false;
+        }
+
+        int fieldStart = fieldStarts[index];
+        int length = fieldEnds[index] - fieldStart;
+        if (length != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer[fieldStart + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a field of the current message as an integer
+     *
+     * @param index index of the field
+     */
+    public int getInt(int index) {
+        if (index >= fieldCount) {
+            throw new NumberFormatException("No field at index " + index + " in \"" + this + "\"");
+        }
+
+        int i = fieldStarts[index];
+        int fieldEnd = fieldEnds[index];
+        boolean negative = buffer[i] == '-';
+        if (negative) {
+            i++;
+        }
+        if (i == fieldEnd) {
+            throw new NumberFormatException("Invalid integer at index " + index + " in \"" + this + "\"");
+        }
+
+        int value = 0;
+        for (; i < fieldEnd; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Invalid integer at index " + index + " in \"" + this + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns a field of the current message as an interned string. The same
+     * field content always returns the same String object, so repeated values
+     * such as server type names and states are only created once.
+     *
+     * @param index index of the field
+     */
+    public String getString(int index) {
+        int fieldStart = fieldStarts[index];
+        int length = fieldEnds[index] - fieldStart;
+
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[fieldStart + i];
+        }
+
+        int mask = internedStrings.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (internedStrings[slot] != null) {
+            String candidate = internedStrings[slot];
+            if (candidate.hashCode() == hash && fieldEquals(index, candidate)) {
+                return candidate;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String value = new String(buffer, fieldStart, length);
+        internedStrings[slot] = value;
+        internedCount++;
+
+        // Keep the table at most half full
+        if (internedCount * 2 > internedStrings.length) {
+            String[] oldStrings = internedStrings;
+            internedStrings = new String[oldStrings.length * 2];
+            mask = internedStrings.length - 1;
+            for (String string : oldStrings) {
+                if (string != null) {
+                    int h = string.hashCode();
+                    int s = (h ^ (h >>> 16)) & mask;
+                    while (internedStrings[s] != null) {
+                        s = (s + 1) & mask;
+                    }
+                    internedStrings[s] = string;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Returns all fields of the current message as a new array of strings.
+     * Use this only when the fields have to be kept after the next message
+     * is received.
+     */
+    public String[] getFields() {
+        String[] fields = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            fields[i] = new String(buffer, fieldStarts[i], fieldEnds[i] - fieldStarts[i]);
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the current message as a string
+     */
+    @Override
+    public String toString() {
+        return new String(buffer, start, end - start).trim();
+    }
+}
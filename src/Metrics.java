@@ -0,0 +1,424 @@
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * <p>
+ * This class measures the quality of a schedule on the client side, from the
+ * events received after REDY and the jobs the client schedules, so that
+ * algorithms can be compared without reading the output of ds-server.
+ * </p>
+ *
+ * <p>
+ * Turnaround times are exact. Start times of jobs are those of the shadow
+ * state of the cluster, so waiting times and utilisation are estimates. A
+ * server is rented from the time its first job is scheduled until it fails or
+ * the simulation ends, and is busy while it runs at least one job, like
+ * ds-sim measures them. Rental cost requires the hourly rates of the server
+ * types, which ds-server writes to ds-system.xml.
+ * </p>
+ */
+public class Metrics {
+    // Time each job was first submitted, indexed by job ID, or -1
+    protected int[] submitTimes;
+    protected int submittedCount;
+
+    protected int completedCount;
+    protected int droppedCount;
+    protected long totalTurnaroundTime;
+    protected Histogram turnaroundTimes;
+    protected long totalWaitingTime;
+
+    // Server, start time and end time of every run of a job, i.e. completed
+    // jobs and running jobs killed by a failure, in the order they ended
+    protected int runCount;
+    protected int[] runServers;
+    protected int[] runStartTimes;
+    protected int[] runEndTimes;
+
+    // Running jobs of a failed server, and the core time lost by killing them
+    protected JobList killedJobs;
+    protected long wastedCoreTime;
+
+    // Time each server was rented from, or -1 if it is not rented, and the
+    // total time it has been rented for, indexed by server
+    protected int[] leaseStarts;
+    protected long[] leasedTimes;
+    protected int terminatedCount;
+
+    // Hourly rate of each server type by name, if known
+    protected String[] rateTypeNames;
+    protected double[] hourlyRates;
+
+    // Time the simulation ended, or -1 while it runs
+    protected int endTime;
+
+    public Metrics() {
+        submitTimes = new int[1024];
+        Arrays.fill(submitTimes, -1);
+        runServers = new int[1024];
+        runStartTimes = new int[1024];
+        runEndTimes = new int[1024];
+        killedJobs = new JobList();
+        turnaroundTimes = new Histogram();
+        leaseStarts = new int[64];
+        Arrays.fill(leaseStarts, -1);
+        leasedTimes = new long[64];
+        endTime = -1;
+    }
+
+    /**
+     * Loads the hourly rates of the server types from ds-system.xml or a
+     * configuration file, which share the same <code> server </code> elements
+     */
+    public void loadHourlyRates(File file) throws Exception {
+        Element root = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file).getDocumentElement();
+        NodeList servers = root.getElementsByTagName("server");
+        rateTypeNames = new String[servers.getLength()];
+        hourlyRates = new double[servers.getLength()];
+        for (int i = 0; i < servers.getLength(); i++) {
+            Element server = (Element) servers.item(i);
+            rateTypeNames[i] = server.getAttribute("type");
+            hourlyRates[i] = Double.parseDouble(server.getAttribute("hourlyRate"));
+        }
+    }
+
+    public boolean hasHourlyRates() {
+        return rateTypeNames != null;
+    }
+
+    /**
+     * Returns the hourly rate of a server type, or NaN if it is unknown
+     */
+    public double getHourlyRate(String typeName) {
+        if (rateTypeNames != null) {
+            for (int i = 0; i < rateTypeNames.length; i++) {
+                if (rateTypeNames[i].equals(typeName)) {
+                    return hourlyRates[i];
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Updates the metrics with an event received after REDY. It must be called
+     * before the cluster handles the event, while the jobs of a failed server
+     * are still in its shadow.
+     */
+    public void handleEvent(Message message, Cluster cluster) {
+        if (message.is("JOBN") || message.is("JOBP")) {
+            // E.g: JOBN 2142 12 750 4 250 800
+            submit(message.getInt(2), message.getInt(1));
+        } else if (message.is("JCPL")) {
+            // E.g: JCPL 2345 12 juju 0
+            int jobID = message.getInt(2);
+            int server = cluster.indexOf(message.getString(3), message.getInt(4));
+            if (server >= 0) {
+                complete(jobID, server, cluster.getJobStartTime(jobID), message.getInt(1));
+            }
+        } else if (message.is("RESF")) {
+            // E.g: RESF juju 0 2345
+            int server = cluster.indexOf(message.getString(1), message.getInt(2));
+            if (server >= 0) {
+                // Running jobs are killed, but the server was busy until now
+                int time = message.getInt(3);
+                cluster.getJobs(server, killedJobs);
+                for (int i = 0; i < killedJobs.size(); i++) {
+                    if (killedJobs.getState(i) == JobList.RUNNING && killedJobs.getStartTime(i) >= 0) {
+                        addRun(server, killedJobs.getStartTime(i), time);
+                        wastedCoreTime += (long) (time - killedJobs.getStartTime(i)) * killedJobs.getCores(i);
+                    }
+                }
+                endLease(server, time);
+            }
+        }
+    }
+
+    /**
+     * Records a submitted job. A resubmitted job keeps its first submit time.
+     */
+    protected void submit(int jobID, int time) {
+        if (jobID >= submitTimes.length) {
+            int oldLength = submitTimes.length;
+            submitTimes = Arrays.copyOf(submitTimes, Math.max(oldLength * 2, jobID + 1));
+            Arrays.fill(submitTimes, oldLength, submitTimes.length, -1);
+        }
+        if (submitTimes[jobID] < 0) {
+            submitTimes[jobID] = time;
+            submittedCount++;
+        }
+    }
+
+    /**
+     * Records a job scheduled to a server, renting the server if it is not
+     * rented
+     */
+    public void assign(int server, int time) {
+        if (server >= leaseStarts.length) {
+            int oldLength = leaseStarts.length;
+            int newLength = Math.max(oldLength * 2, server + 1);
+            leaseStarts = Arrays.copyOf(leaseStarts, newLength);
+            Arrays.fill(leaseStarts, oldLength, newLength, -1);
+            leasedTimes = Arrays.copyOf(leasedTimes, newLength);
+        }
+        if (leaseStarts[server] < 0) {
+            leaseStarts[server] = time;
+        }
+    }
+
+    /**
+     * Records a completed job
+     *
+     * @param startTime start time of the job, or -1 if it is unknown, in which
+     *                  case its waiting time is taken as 0
+     */
+    protected void complete(int jobID, int server, int startTime, int time) {
+        if (jobID >= submitTimes.length || submitTimes[jobID] < 0) {
+            return;
+        }
+
+        int submitTime = submitTimes[jobID];
+        if (startTime < submitTime || startTime > time) {
+            startTime = submitTime;
+        }
+        totalTurnaroundTime += time - submitTime;
+        turnaroundTimes.record(time - submitTime);
+        totalWaitingTime += startTime - submitTime;
+        completedCount++;
+        addRun(server, startTime, time);
+    }
+
+    protected void addRun(int server, int startTime, int endTime) {
+        if (startTime < 0) {
+            return;
+        }
+        if (runCount == runServers.length) {
+            int newLength = runCount * 2;
+            runServers = Arrays.copyOf(runServers, newLength);
+            runStartTimes = Arrays.copyOf(runStartTimes, newLength);
+            runEndTimes = Arrays.copyOf(runEndTimes, newLength);
+        }
+        runServers[runCount] = server;
+        runStartTimes[runCount] = startTime;
+        runEndTimes[runCount] = endTime;
+        runCount++;
+    }
+
+    protected void endLease(int server, int time) {
+        if (server < leaseStarts.length && leaseStarts[server] >= 0) {
+            leasedTimes[server] += time - leaseStarts[server];
+            leaseStarts[server] = -1;
+        }
+    }
+
+    /**
+     * Records a job the client gave up on, which is neither scheduled nor
+     * queued
+     */
+    public void drop() {
+        droppedCount++;
+    }
+
+    /**
+     * Records a server terminated with TERM, ending its rental
+     */
+    public void terminate(int server, int time) {
+        endLease(server, time);
+        terminatedCount++;
+    }
+
+    /**
+     * Ends the rental of all servers at the end of the simulation
+     */
+    public void finish(int time) {
+        for (int server = 0; server < leaseStarts.length; server++) {
+            endLease(server, time);
+        }
+        endTime = time;
+    }
+
+    public int getSubmittedJobCount() {
+        return submittedCount;
+    }
+
+    public int getCompletedJobCount() {
+        return completedCount;
+    }
+
+    /**
+     * Returns the number of jobs the client gave up on
+     */
+    public int getDroppedJobCount() {
+        return droppedCount;
+    }
+
+    public double getAverageTurnaroundTime() {
+        return completedCount == 0 ? 0 : (double) totalTurnaroundTime / completedCount;
+    }
+
+    /**
+     * Returns the number of servers terminated with TERM
+     */
+    public int getTerminatedCount() {
+        return terminatedCount;
+    }
+
+    /**
+     * Returns the core time of runs killed by server failures, in core-seconds
+     */
+    public long getWastedCoreTime() {
+        return wastedCoreTime;
+    }
+
+    /**
+     * Returns the distribution of turnaround times
+     */
+    public Histogram getTurnaroundTimes() {
+        return turnaroundTimes;
+    }
+
+    public double getAverageWaitingTime() {
+        return completedCount == 0 ? 0 : (double) totalWaitingTime / completedCount;
+    }
+
+    /**
+     * Returns the time each server was rented for, indexed by server
+     */
+    public long getLeasedTime(int server) {
+        return server < leasedTimes.length ? leasedTimes[server] : 0;
+    }
+
+    /**
+     * Returns the time each server ran at least one job, indexed by server,
+     * from the union of the runs of its jobs
+     */
+    public long[] getBusyTimes(int serverCount) {
+        long[] busyTimes = new long[serverCount];
+
+        // Group the runs by server with a counting sort, then sort the runs of
+        // each server by start time, packed with their index into long keys
+        int[] offsets = new int[serverCount + 1];
+        for (int i = 0; i < runCount; i++) {
+            if (runServers[i] < serverCount) {
+                offsets[runServers[i] + 1]++;
+            }
+        }
+        for (int server = 0; server < serverCount; server++) {
+            offsets[server + 1] += offsets[server];
+        }
+        long[] keys = new long[offsets[serverCount]];
+        int[] next = Arrays.copyOf(offsets, serverCount);
+        for (int i = 0; i < runCount; i++) {
+            if (runServers[i] < serverCount) {
+                keys[next[runServers[i]]++] = (long) runStartTimes[i] << 32 | i;
+            }
+        }
+
+        for (int server = 0; server < serverCount; server++) {
+            Arrays.sort(keys, offsets[server], offsets[server + 1]);
+            int busyUntil = 0;
+            for (int k = offsets[server]; k < offsets[server + 1]; k++) {
+                int i = (int) keys[k];
+                int start = Math.max(runStartTimes[i], busyUntil);
+                if (runEndTimes[i] > start) {
+                    busyTimes[server] += runEndTimes[i] - start;
+                }
+                busyUntil = Math.max(busyUntil, runEndTimes[i]);
+            }
+        }
+        return busyTimes;
+    }
+
+    /**
+     * Returns the metrics as JSON, with the utilisation and cost of each server
+     * type of a cluster. Costs are null if the hourly rates are unknown.
+     *
+     * @param algorithm name of the algorithm
+     */
+    public String toJson(String algorithm, Cluster cluster) {
+        long[] busyTimes = getBusyTimes(cluster.getServerCount());
+        StringBuilder types = new StringBuilder();
+        int totalUsedServers = 0;
+        double totalUtilisation = 0;
+        double totalCost = 0;
+        for (int type = 0; type < cluster.getTypeCount(); type++) {
+            String typeName = cluster.getTypeName(type);
+            double hourlyRate = getHourlyRate(typeName);
+            int usedServers = 0;
+            long leasedTime = 0;
+            long busyTime = 0;
+            double utilisation = 0;
+            int end = cluster.getTypeOffset(type) + cluster.getTypeLimit(type);
+            for (int server = cluster.getTypeOffset(type); server < end; server++) {
+                long serverLeasedTime = getLeasedTime(server);
+                if (serverLeasedTime > 0) {
+                    usedServers++;
+                    leasedTime += serverLeasedTime;
+                    busyTime += busyTimes[server];
+                    utilisation += Math.min(1, (double) busyTimes[server] / serverLeasedTime);
+                }
+            }
+            double cost = leasedTime * hourlyRate / 3600;
+            totalUsedServers += usedServers;
+            totalUtilisation += utilisation;
+            totalCost += cost;
+
+            types.append(types.length() == 0 ? "\n" : ",\n");
+            types.append(String.format(Locale.ROOT,
+                    "    {\"type\": \"%s\", \"serversUsed\": %d, \"leasedTime\": %d, \"busyTime\": %d, "
+                            + "\"utilisation\": %.4f, \"cost\": %s}",
+                    typeName, usedServers, leasedTime, busyTime, usedServers == 0 ? 0 : utilisation / usedServers,
+                    jsonNumber(cost)));
+        }
+
+        return String.format(Locale.ROOT, "{\n"
+                + "  \"algorithm\": \"%s\",\n"
+                + "  \"endTime\": %d,\n"
+                + "  \"submittedJobs\": %d,\n"
+                + "  \"completedJobs\": %d,\n"
+                + "  \"droppedJobs\": %d,\n"
+                + "  \"avgTurnaroundTime\": %.2f,\n"
+                + "  \"p95TurnaroundTime\": %d,\n"
+                + "  \"p99TurnaroundTime\": %d,\n"
+                + "  \"maxTurnaroundTime\": %d,\n"
+                + "  \"avgWaitingTime\": %.2f,\n"
+                + "  \"wastedCoreTime\": %d,\n"
+                + "  \"serversUsed\": %d,\n"
+                + "  \"terminatedServers\": %d,\n"
+                + "  \"avgUtilisation\": %.4f,\n"
+                + "  \"totalCost\": %s,\n"
+                + "  \"types\": [%s\n  ]\n"
+                + "}\n",
+                algorithm, endTime, submittedCount, completedCount, droppedCount, getAverageTurnaroundTime(),
+                turnaroundTimes.getValueAtPercentile(95), turnaroundTimes.getValueAtPercentile(99),
+                turnaroundTimes.getMaxValue(),
+                getAverageWaitingTime(), wastedCoreTime, totalUsedServers, terminatedCount,
+                totalUsedServers == 0 ? 0 : totalUtilisation / totalUsedServers, jsonNumber(totalCost), types);
+    }
+
+    protected static String jsonNumber(double value) {
+        return Double.isNaN(value) ? "null" : String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    /**
+     * Writes the metrics as JSON to a file, or to the standard output if the
+     * path is "-"
+     */
+    public void export(String path, String algorithm, Cluster cluster) throws Exception {
+        String json = toJson(algorithm, cluster);
+        if (path.equals("-")) {
+            System.out.print(json);
+            return;
+        }
+        try (PrintWriter writer = new PrintWriter(path)) {
+            writer.print(json);
+        }
+    }
+}
@@ -0,0 +1,1125 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * <p>
+ * This class is a pure-Java, in-process implementation of the ds-sim server
+ * side of the protocol. It reads the same configuration files as ds-server
+ * (servers, job types, workload, termination, job files and failure files)
+ * and simulates server boot-up, strict-order local queues, job completions,
+ * failures and the global queue.
+ * </p>
+ *
+ * <p>
+ * Job arrivals are generated from the configuration's random seed but do not
+ * reproduce ds-server's random number stream, so results are comparable
+ * between algorithms run on this server, not with ds-server logs. Configs
+ * with a job file replay the listed jobs exactly.
+ * </p>
+ */
+public class MockServer {
+    // Server states, named as in GETS records
+    static final String[] STATE_NAMES = { "inactive", "booting", "idle", "active", "unavailable" };
+    static final int INACTIVE = 0;
+    static final int BOOTING = 1;
+    static final int IDLE = 2;
+    static final int ACTIVE = 3;
+    static final int UNAVAILABLE = 4;
+
+    // Job states, numbered as in LSTJ records
+    static final int WAITING = 1;
+    static final int RUNNING = 2;
+
+    /**
+     * A job in the simulation
+     */
+    static class SimJob {
+        int id;
+        int type;
+        int submitTime;
+        int firstSubmitTime;
+        int estRunTime;
+        int actualRunTime;
+        int cores;
+        int memory;
+        int disk;
+        int startTime = -1;
+        int endTime = -1;
+        int queuedTime = -1;
+        boolean resubmitted;
+        SimServer server;
+    }
+
+    /**
+     * A server in the simulation
+     */
+    static class SimServer {
+        int index;
+        int type;
+        int id;
+        int state = INACTIVE;
+        int readyTime = -1;
+        int availableCore;
+        int availableMemory;
+        int availableDisk;
+        List<SimJob> waitingJobs = new ArrayList<>();
+        List<SimJob> runningJobs = new ArrayList<>();
+
+        // Failure information
+        int failures = 0;
+        int totalFailTime = 0;
+        int lastFailTime = -1;
+
+        // Usage information for the summary
+        int leaseStart = -1;
+        long leasedTime = 0;
+        int busySince = -1;
+        long busyTime = 0;
+        boolean used = false;
+    }
+
+    // Server types
+    protected String[] typeNames;
+    protected int[] typeLimits;
+    protected int[] typeBootupTimes;
+    protected double[] typeHourlyRates;
+    protected int[] typeCores;
+    protected int[] typeMemory;
+    protected int[] typeDisks;
+
+    // All servers, ordered by type then ID
+    protected SimServer[] servers;
+    protected int[] typeOffsets;
+
+    // Events
+    protected PriorityQueue<SimJob> submissions;
+    protected PriorityQueue<SimJob> completions;
+    protected int[][] failureEvents;
+    protected int nextFailureEvent = 0;
+    protected boolean failureEnabled = false;
+
+    // Global queue
+    protected List<SimJob> globalQueue = new ArrayList<>();
+
+    // Current simulation time and the job handed out on the last REDY
+    protected int currentTime = 0;
+    protected SimJob currentJob;
+    protected int submissionSequence = 0;
+
+    // Replies waiting to be read by the client
+    protected ArrayDeque<String> replies = new ArrayDeque<>();
+
+    // Record and job listings waiting for the client's OK
+    protected List<String> pendingRecords;
+    protected boolean awaitingFinalOK = false;
+
+    // Statistics
+    protected List<SimJob> completedJobs = new ArrayList<>();
+    protected int totalJobs = 0;
+    protected boolean quit = false;
+
+    public MockServer(File configFile) throws Exception {
+        submissions = new PriorityQueue<>((a, b) -> a.submitTime != b.submitTime
+                ? Integer.compare(a.submitTime, b.submitTime)
+                : Integer.compare(a.id, b.id));
+        completions = new PriorityQueue<>((a, b) -> a.endTime != b.endTime
+                ? Integer.compare(a.endTime, b.endTime)
+                : Integer.compare(a.id, b.id));
+        loadConfig(configFile);
+    }
+
+    /**
+     * Loads servers, jobs and failures from a ds-sim configuration file
+     */
+    protected void loadConfig(File configFile) throws Exception {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(configFile);
+        Element config = document.getDocumentElement();
+        long seed = config.hasAttribute("randomSeed") ? Long.parseLong(config.getAttribute("randomSeed")) : 0;
+
+        // Servers
+        Element serversElement = (Element) config.getElementsByTagName("servers").item(0);
+        NodeList serverNodes = serversElement.getElementsByTagName("server");
+        int typeCount = serverNodes.getLength();
+        typeNames = new String[typeCount];
+        typeLimits = new int[typeCount];
+        typeBootupTimes = new int[typeCount];
+        typeHourlyRates = new double[typeCount];
+        typeCores = new int[typeCount];
+        typeMemory = new int[typeCount];
+        typeDisks = new int[typeCount];
+        typeOffsets = new int[typeCount + 1];
+
+        for (int i = 0; i < typeCount; i++) {
+            Element server = (Element) serverNodes.item(i);
+            typeNames[i] = server.getAttribute("type");
+            typeLimits[i] = Integer.parseInt(server.getAttribute("limit"));
+            typeBootupTimes[i] = Integer.parseInt(server.getAttribute("bootupTime"));
+            typeHourlyRates[i] = Double.parseDouble(server.getAttribute("hourlyRate"));
+            typeCores[i] = Integer.parseInt(server.getAttribute("cores"));
+            typeMemory[i] = Integer.parseInt(server.getAttribute("memory"));
+            typeDisks[i] = Integer.parseInt(server.getAttribute("disk"));
+            typeOffsets[i + 1] = typeOffsets[i] + typeLimits[i];
+        }
+
+        servers = new SimServer[typeOffsets[typeCount]];
+        for (int type = 0; type < typeCount; type++) {
+            for (int id = 0; id < typeLimits[type]; id++) {
+                SimServer server = new SimServer();
+                server.index = typeOffsets[type] + id;
+                server.type = type;
+                server.id = id;
+                server.availableCore = typeCores[type];
+                server.availableMemory = typeMemory[type];
+                server.availableDisk = typeDisks[type];
+                servers[server.index] = server;
+            }
+        }
+
+        // Failures
+        if (serversElement.hasAttribute("failureFile")) {
+            loadFailures(new File(configFile.getParentFile(), serversElement.getAttribute("failureFile")));
+        } else {
+            failureEvents = new int[0][];
+        }
+
+        // Jobs
+        Element jobsElement = (Element) config.getElementsByTagName("jobs").item(0);
+        if (jobsElement.hasAttribute("file")) {
+            Document jobDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+                    .parse(new File(configFile.getParentFile(), jobsElement.getAttribute("file")));
+            loadJobs(jobDocument.getDocumentElement().getElementsByTagName("job"));
+        } else {
+            generateJobs(config, jobsElement, new Random(seed));
+        }
+    }
+
+    /**
+     * Loads failure events from a failure trace, each line of which is
+     * <code> failStartTime failEndTime serverType serverID </code>
+     */
+    protected void loadFailures(File failureFile) throws Exception {
+        List<int[]> events = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(failureFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] fields = line.trim().split("\\s+");
+                int type = findType(fields[2]);
+                if (type < 0) {
+                    continue;
+                }
+
+                int server = typeOffsets[type] + Integer.parseInt(fields[3]);
+                events.add(new int[] { Integer.parseInt(fields[0]), server, 1 });
+                events.add(new int[] { Integer.parseInt(fields[1]), server, 0 });
+            }
+        }
+
+        // Recoveries come before failures at the same time
+        events.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[2], b[2]));
+        failureEvents = events.toArray(new int[0][]);
+        failureEnabled = true;
+    }
+
+    /**
+     * Loads jobs listed in a job file
+     */
+    protected void loadJobs(NodeList jobNodes) {
+        for (int i = 0; i < jobNodes.getLength(); i++) {
+            Element element = (Element) jobNodes.item(i);
+            SimJob job = new SimJob();
+            job.id = Integer.parseInt(element.getAttribute("id"));
+            job.submitTime = Integer.parseInt(element.getAttribute("submitTime"));
+            job.firstSubmitTime = job.submitTime;
+            job.estRunTime = Integer.parseInt(element.getAttribute("estRunTime"));
+            job.actualRunTime = job.estRunTime;
+            job.cores = Integer.parseInt(element.getAttribute("cores"));
+            job.memory = Integer.parseInt(element.getAttribute("memory"));
+            job.disk = Integer.parseInt(element.getAttribute("disk"));
+            submissions.add(job);
+        }
+        totalJobs = jobNodes.getLength();
+    }
+
+    /**
+     * Generates jobs from the job types, workload and termination conditions
+     */
+    protected void generateJobs(Element config, Element jobsElement, Random random) {
+        NodeList jobTypes = jobsElement.getElementsByTagName("job");
+        int jobTypeCount = jobTypes.getLength();
+        int[] minRunTimes = new int[jobTypeCount];
+        int[] maxRunTimes = new int[jobTypeCount];
+        int[] populationRates = new int[jobTypeCount];
+        int totalRate = 0;
+        double meanRunTime = 0;
+        for (int i = 0; i < jobTypeCount; i++) {
+            Element jobType = (Element) jobTypes.item(i);
+            minRunTimes[i] = Integer.parseInt(jobType.getAttribute("minRunTime"));
+            maxRunTimes[i] = Integer.parseInt(jobType.getAttribute("maxRunTime"));
+            populationRates[i] = Integer.parseInt(jobType.getAttribute("populationRate"));
+            totalRate += populationRates[i];
+            meanRunTime += populationRates[i] * (minRunTimes[i] + maxRunTimes[i]) / 2.0;
+        }
+        meanRunTime /= totalRate;
+
+        // Workload
+        int minLoad = 50;
+        int maxLoad = 50;
+        NodeList workloads = config.getElementsByTagName("workload");
+        if (workloads.getLength() > 0) {
+            Element workload = (Element) workloads.item(0);
+            minLoad = Integer.parseInt(workload.getAttribute("minLoad"));
+            maxLoad = Integer.parseInt(workload.getAttribute("maxLoad"));
+        }
+
+        // Termination
+        int endTime = Integer.MAX_VALUE;
+        int jobCount = 1000;
+        NodeList conditions = config.getElementsByTagName("condition");
+        for (int i = 0; i < conditions.getLength(); i++) {
+            Element condition = (Element) conditions.item(i);
+            if (condition.getAttribute("type").equals("endtime")) {
+                endTime = Integer.parseInt(condition.getAttribute("value"));
+            } else if (condition.getAttribute("type").equals("jobcount")) {
+                jobCount = Integer.parseInt(condition.getAttribute("value"));
+            }
+        }
+
+        // Job resources are bounded by the largest server type
+        int largestType = 0;
+        long totalCores = 0;
+        for (int type = 0; type < typeNames.length; type++) {
+            totalCores += (long) typeCores[type] * typeLimits[type];
+            if (typeCores[type] > typeCores[largestType]) {
+                largestType = type;
+            }
+        }
+        int maxCores = typeCores[largestType];
+        double meanCores = (1 + maxCores) / 3.0;
+
+        int submitTime = 0;
+        double load = (minLoad + random.nextInt(maxLoad - minLoad + 1)) / 100.0;
+        int loadPeriodEnd = 3600;
+        for (int i = 0; i < jobCount; i++) {
+            // Change the load every hour
+            if (submitTime >= loadPeriodEnd) {
+                load = (minLoad + random.nextInt(maxLoad - minLoad + 1)) / 100.0;
+                loadPeriodEnd += 3600;
+            }
+
+            // Exponential inter-arrival time giving the expected core utilisation
+            double meanInterval = meanRunTime * meanCores / (Math.max(load, 0.01) * totalCores);
+            submitTime += (int) Math.round(-Math.log(1 - random.nextDouble()) * meanInterval);
+            if (submitTime > endTime) {
+                break;
+            }
+
+            int roll = random.nextInt(totalRate);
+            int jobType = 0;
+            while (roll >= populationRates[jobType]) {
+                roll -= populationRates[jobType];
+                jobType++;
+            }
+
+            SimJob job = new SimJob();
+            job.id = i;
+            job.type = jobType;
+            job.submitTime = submitTime;
+            job.firstSubmitTime = submitTime;
+            job.estRunTime = minRunTimes[jobType] + random.nextInt(maxRunTimes[jobType] - minRunTimes[jobType] + 1);
+            job.actualRunTime = Math.max(1, (int) Math.round(job.estRunTime * (0.8 + 0.4 * random.nextDouble())));
+            double r = random.nextDouble();
+            job.cores = 1 + (int) (r * r * maxCores);
+            job.cores = Math.min(job.cores, maxCores);
+            job.memory = Math.min(typeMemory[largestType], job.cores * (100 + random.nextInt(1000)));
+            job.disk = Math.min(typeDisks[largestType], job.cores * (100 + random.nextInt(4000)));
+            submissions.add(job);
+            totalJobs++;
+        }
+    }
+
+    /**
+     * Returns the index of a server type, or -1 if no such type exists
+     */
+    protected int findType(String typeName) {
+        for (int type = 0; type < typeNames.length; type++) {
+            if (typeNames[type].equals(typeName)) {
+                return type;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds a server by its type and ID
+     */
+    protected SimServer findServer(String typeName, String id) {
+        int type = findType(typeName);
+        if (type < 0) {
+            return null;
+        }
+
+        int serverID;
+        try {
+            serverID = Integer.parseInt(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (serverID < 0 || serverID >= typeLimits[type]) {
+            return null;
+        }
+        return servers[typeOffsets[type] + serverID];
+    }
+
+    /**
+     * Returns whether a server type can ever run a job
+     */
+    protected boolean isCapable(int type, int cores, int memory, int disk) {
+        return typeCores[type] >= cores && typeMemory[type] >= memory && typeDisks[type] >= disk;
+    }
+
+    /**
+     * Returns whether the server has no more messages for the client
+     */
+    public boolean isFinished() {
+        return quit;
+    }
+
+    /**
+     * Returns the next reply to the client, or null if there is none
+     */
+    public String poll() {
+        return replies.poll();
+    }
+
+    /**
+     * Handles a message sent by the client and queues the replies
+     *
+     * @param message the message received from the client
+     */
+    public void handle(String message) {
+        String[] fields = message.trim().split(" ");
+        String command = fields[0];
+
+        // Record listings require the client's OK before being sent
+        if (pendingRecords != null) {
+            if (command.equals("OK")) {
+                replies.addAll(pendingRecords);
+                pendingRecords = null;
+                awaitingFinalOK = true;
+            } else {
+                replies.add("ERR: expected OK");
+            }
+            return;
+        }
+
+        if (awaitingFinalOK) {
+            awaitingFinalOK = false;
+            if (command.equals("OK")) {
+                replies.add(".");
+                return;
+            }
+        }
+
+        switch (command) {
+            case "HELO":
+            case "AUTH":
+                replies.add("OK");
+                break;
+            case "REDY":
+                replies.add(nextEvent());
+                break;
+            case "GETS":
+                handleGETS(fields);
+                break;
+            case "LSTJ":
+                handleLSTJ(fields);
+                break;
+            case "CNTJ":
+                handleCNTJ(fields);
+                break;
+            case "EJWT":
+                handleEJWT(fields);
+                break;
+            case "SCHD":
+                handleSCHD(fields);
+                break;
+            case "MIGJ":
+                handleMIGJ(fields);
+                break;
+            case "TERM":
+                handleTERM(fields);
+                break;
+            case "ENQJ":
+                handleENQJ(fields);
+                break;
+            case "DEQJ":
+                handleDEQJ(fields);
+                break;
+            case "LSTQ":
+                handleLSTQ(fields);
+                break;
+            case "QUIT":
+                finish();
+                replies.add("QUIT");
+                quit = true;
+                break;
+            default:
+                replies.add("ERR: invalid command (" + message + ")");
+        }
+    }
+
+    /**
+     * Queues a DATA header followed by records sent after the client's OK
+     */
+    protected void sendRecords(List<String> records, int recordLength) {
+        replies.add("DATA " + records.size() + " " + recordLength);
+        pendingRecords = records;
+    }
+
+    /**
+     * Returns the GETS record of a server
+     */
+    protected String serverRecord(SimServer server) {
+        int type = server.type;
+        int availableCore = server.availableCore;
+        int availableMemory = server.availableMemory;
+        int availableDisk = server.availableDisk;
+        if (server.state == UNAVAILABLE) {
+            availableCore = 0;
+            availableMemory = 0;
+            availableDisk = 0;
+        }
+
+        String record = typeNames[type] + " " + server.id + " " + STATE_NAMES[server.state] + " "
+                + server.readyTime + " " + availableCore + " " + availableMemory + " " + availableDisk
+                + " " + server.waitingJobs.size() + " " + server.runningJobs.size();
+
+        if (failureEnabled) {
+            int mttf = server.failures == 0 ? -1 : currentTime / server.failures;
+            int mttr = server.failures == 0 ? -1 : server.totalFailTime / server.failures;
+            record += " " + server.failures + " " + server.totalFailTime + " " + mttf + " " + mttr
+                    + " " + -1 + " " + server.readyTime;
+        }
+        return record;
+    }
+
+    protected void handleGETS(String[] fields) {
+        List<String> records = new ArrayList<>();
+        if (fields.length >= 2 && fields[1].equals("All")) {
+            for (SimServer server : servers) {
+                records.add(serverRecord(server));
+            }
+        } else if (fields.length >= 3 && fields[1].equals("Type")) {
+            int type = findType(fields[2]);
+            if (type < 0) {
+                replies.add("ERR: No such server type exists");
+                return;
+            }
+            for (int id = 0; id < typeLimits[type]; id++) {
+                records.add(serverRecord(servers[typeOffsets[type] + id]));
+            }
+        } else if (fields.length >= 5 && (fields[1].equals("Capable") || fields[1].equals("Avail"))) {
+            int cores = Integer.parseInt(fields[2]);
+            int memory = Integer.parseInt(fields[3]);
+            int disk = Integer.parseInt(fields[4]);
+            boolean avail = fields[1].equals("Avail");
+
+            for (SimServer server : servers) {
+                if (!isCapable(server.type, cores, memory, disk)) {
+                    continue;
+                }
+                if (avail && (server.state == UNAVAILABLE || server.state == BOOTING
+                        || !server.waitingJobs.isEmpty()
+                        || server.availableCore < cores
+                        || server.availableMemory < memory
+                        || server.availableDisk < disk)) {
+                    continue;
+                }
+                records.add(serverRecord(server));
+            }
+        } else {
+            replies.add("ERR: invalid resource infomation query");
+            return;
+        }
+        sendRecords(records, 124);
+    }
+
+    protected void handleLSTJ(String[] fields) {
+        SimServer server = fields.length >= 3 ? findServer(fields[1], fields[2]) : null;
+        if (server == null) {
+            replies.add("ERR: invalid job listing query");
+            return;
+        }
+
+        List<String> records = new ArrayList<>();
+        for (SimJob job : server.runningJobs) {
+            records.add(jobRecord(job, RUNNING, job.startTime));
+        }
+        for (SimJob job : server.waitingJobs) {
+            int startTime = server.state == BOOTING ? server.readyTime : -1;
+            records.add(jobRecord(job, WAITING, startTime));
+        }
+        sendRecords(records, 59);
+    }
+
+    protected String jobRecord(SimJob job, int state, int startTime) {
+        return job.id + " " + state + " " + job.submitTime + " " + startTime + " " + job.estRunTime
+                + " " + job.cores + " " + job.memory + " " + job.disk;
+    }
+
+    protected void handleCNTJ(String[] fields) {
+        SimServer server = fields.length >= 4 ? findServer(fields[1], fields[2]) : null;
+        if (server == null) {
+            replies.add("ERR: invalid job count query");
+            return;
+        }
+
+        int state = Integer.parseInt(fields[3]);
+        int count = state == WAITING ? server.waitingJobs.size()
+                : state == RUNNING ? server.runningJobs.size() : 0;
+        replies.add(String.valueOf(count));
+    }
+
+    protected void handleEJWT(String[] fields) {
+        SimServer server = fields.length >= 3 ? findServer(fields[1], fields[2]) : null;
+        if (server == null) {
+            replies.add("ERR: invalid estimated waiting time query");
+            return;
+        }
+
+        int total = 0;
+        for (SimJob job : server.waitingJobs) {
+            total += job.estRunTime;
+        }
+        replies.add(String.valueOf(total));
+    }
+
+    protected void handleSCHD(String[] fields) {
+        if (fields.length < 4 || currentJob == null || !fields[1].equals(String.valueOf(currentJob.id))) {
+            replies.add("ERR: invalid message");
+            return;
+        }
+
+        SimServer server = findServer(fields[2], fields[3]);
+        if (server == null) {
+            replies.add("ERR: No such server exists");
+            return;
+        }
+        if (server.state == UNAVAILABLE) {
+            replies.add("ERR: The specified server unavailable");
+            return;
+        }
+        if (!isCapable(server.type, currentJob.cores, currentJob.memory, currentJob.disk)) {
+            replies.add("ERR: Server incapable of running such a job");
+            return;
+        }
+
+        assign(currentJob, server);
+        currentJob = null;
+        replies.add("OK");
+    }
+
+    protected void handleMIGJ(String[] fields) {
+        if (fields.length < 6) {
+            replies.add("ERR: invalid message");
+            return;
+        }
+
+        SimServer source = findServer(fields[2], fields[3]);
+        SimServer target = findServer(fields[4], fields[5]);
+        if (source == null || target == null || target.state == UNAVAILABLE) {
+            replies.add("ERR: No such server exists");
+            return;
+        }
+        if (source == target) {
+            replies.add("ERR: Cannot migrate to itself");
+            return;
+        }
+
+        int jobID = Integer.parseInt(fields[1]);
+        SimJob job = null;
+        for (SimJob waitingJob : source.waitingJobs) {
+            if (waitingJob.id == jobID) {
+                job = waitingJob;
+            }
+        }
+        for (SimJob runningJob : source.runningJobs) {
+            if (runningJob.id == jobID) {
+                job = runningJob;
+            }
+        }
+        if (job == null || !isCapable(target.type, job.cores, job.memory, job.disk)) {
+            replies.add("ERR: No such waiting job exists");
+            return;
+        }
+
+        // A migrated running job restarts on the target server
+        removeJob(source, job);
+        job.startTime = -1;
+        assign(job, target);
+        startJobs(source);
+        replies.add("OK");
+    }
+
+    protected void handleTERM(String[] fields) {
+        SimServer server = fields.length >= 3 ? findServer(fields[1], fields[2]) : null;
+        if (server == null || server.state == UNAVAILABLE) {
+            replies.add("ERR: invalid server termination command");
+            return;
+        }
+
+        int killed = killJobs(server);
+        endLease(server);
+        server.state = INACTIVE;
+        server.readyTime = -1;
+        replies.add(killed + " jobs killed");
+    }
+
+    protected void handleENQJ(String[] fields) {
+        if (currentJob == null) {
+            replies.add("ERR: no job to enqueue!");
+            return;
+        }
+
+        currentJob.queuedTime = currentTime;
+        globalQueue.add(currentJob);
+        currentJob = null;
+        replies.add("OK");
+    }
+
+    protected void handleDEQJ(String[] fields) {
+        if (fields.length < 3) {
+            replies.add("ERR: invalid syntax (DEQJ queue_name q_ID)!");
+            return;
+        }
+
+        int queueID = Integer.parseInt(fields[2]);
+        if (queueID < 0 || queueID >= globalQueue.size()) {
+            replies.add("ERR: no job in the queue ID of " + queueID + " (current Q length: "
+                    + globalQueue.size() + ")!");
+            return;
+        }
+
+        // The dequeued job is handed out again on the next REDY
+        SimJob job = globalQueue.remove(queueID);
+        job.submitTime = currentTime;
+        submissions.add(job);
+        replies.add("OK");
+    }
+
+    protected void handleLSTQ(String[] fields) {
+        if (fields.length < 3) {
+            replies.add("ERR: invalid queued job listing query");
+            return;
+        }
+
+        if (fields[2].equals("#")) {
+            replies.add(String.valueOf(globalQueue.size()));
+        } else if (fields[2].equals("*")) {
+            List<String> records = new ArrayList<>();
+            for (SimJob job : globalQueue) {
+                records.add(queuedJobRecord(job));
+            }
+            sendRecords(records, 59);
+        } else {
+            int queueID = Integer.parseInt(fields[2]);
+            if (queueID < 0 || queueID >= globalQueue.size()) {
+                replies.add("ERR: No such queue ID (" + queueID + ") exists!");
+            } else {
+                replies.add(queuedJobRecord(globalQueue.get(queueID)));
+            }
+        }
+    }
+
+    /**
+     * Returns the LSTQ record of a queued job, i.e.
+     * <code> jobID submitTime queuedTime estRunTime cores memory disk </code>
+     */
+    protected String queuedJobRecord(SimJob job) {
+        return job.id + " " + job.submitTime + " " + job.queuedTime + " " + job.estRunTime
+                + " " + job.cores + " " + job.memory + " " + job.disk;
+    }
+
+    /**
+     * Assigns a job to the local queue of a server
+     */
+    protected void assign(SimJob job, SimServer server) {
+        job.server = server;
+        server.waitingJobs.add(job);
+        if (server.state == INACTIVE) {
+            server.state = BOOTING;
+            server.readyTime = currentTime + typeBootupTimes[server.type];
+            server.leaseStart = currentTime;
+            server.used = true;
+        }
+        startJobs(server);
+    }
+
+    /**
+     * Starts waiting jobs of a server in strict order while resources last
+     */
+    protected void startJobs(SimServer server) {
+        if (server.state == BOOTING || server.state == UNAVAILABLE || server.state == INACTIVE) {
+            return;
+        }
+
+        while (!server.waitingJobs.isEmpty()) {
+            SimJob job = server.waitingJobs.get(0);
+            if (job.cores > server.availableCore
+                    || job.memory > server.availableMemory
+                    || job.disk > server.availableDisk) {
+                break;
+            }
+
+            server.waitingJobs.remove(0);
+            server.runningJobs.add(job);
+            server.availableCore -= job.cores;
+            server.availableMemory -= job.memory;
+            server.availableDisk -= job.disk;
+            job.startTime = currentTime;
+            job.endTime = currentTime + job.actualRunTime;
+            completions.add(job);
+        }
+        updateState(server);
+    }
+
+    /**
+     * Updates the state of an active server depending on its running jobs
+     */
+    protected void updateState(SimServer server) {
+        if (server.state != IDLE && server.state != ACTIVE) {
+            return;
+        }
+
+        if (server.runningJobs.isEmpty()) {
+            if (server.busySince >= 0) {
+                server.busyTime += currentTime - server.busySince;
+                server.busySince = -1;
+            }
+            server.state = server.waitingJobs.isEmpty() ? IDLE : ACTIVE;
+        } else {
+            if (server.busySince < 0) {
+                server.busySince = currentTime;
+            }
+            server.state = ACTIVE;
+        }
+    }
+
+    /**
+     * Removes a job from a server, freeing its resources if it was running
+     */
+    protected void removeJob(SimServer server, SimJob job) {
+        if (server.runningJobs.remove(job)) {
+            completions.remove(job);
+            server.availableCore += job.cores;
+            server.availableMemory += job.memory;
+            server.availableDisk += job.disk;
+        } else {
+            server.waitingJobs.remove(job);
+        }
+        job.server = null;
+    }
+
+    /**
+     * Kills all jobs of a server and resubmits them
+     *
+     * @return the number of jobs killed
+     */
+    protected int killJobs(SimServer server) {
+        List<SimJob> jobs = new ArrayList<>(server.runningJobs);
+        jobs.addAll(server.waitingJobs);
+        for (SimJob job : jobs) {
+            removeJob(server, job);
+            job.startTime = -1;
+            job.endTime = -1;
+            job.resubmitted = true;
+            job.submitTime = currentTime;
+            submissions.add(job);
+        }
+        updateState(server);
+        return jobs.size();
+    }
+
+    /**
+     * Ends the rental of a server
+     */
+    protected void endLease(SimServer server) {
+        if (server.busySince >= 0) {
+            server.busyTime += currentTime - server.busySince;
+            server.busySince = -1;
+        }
+        if (server.leaseStart >= 0) {
+            server.leasedTime += currentTime - server.leaseStart;
+            server.leaseStart = -1;
+        }
+    }
+
+    /**
+     * Returns whether there are jobs still to be submitted or executed
+     */
+    protected boolean hasPendingJobs() {
+        return !submissions.isEmpty() || !completions.isEmpty() || !globalQueue.isEmpty()
+                || currentJob != null || hasWaitingJobs();
+    }
+
+    protected boolean hasWaitingJobs() {
+        for (SimServer server : servers) {
+            if (!server.waitingJobs.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Advances the simulation to the next event visible to the client and
+     * returns the corresponding message
+     */
+    protected String nextEvent() {
+        while (true) {
+            int bootTime = Integer.MAX_VALUE;
+            SimServer bootingServer = null;
+            for (SimServer server : servers) {
+                if (server.state == BOOTING && server.readyTime < bootTime) {
+                    bootTime = server.readyTime;
+                    bootingServer = server;
+                }
+            }
+            int completionTime = completions.isEmpty() ? Integer.MAX_VALUE : completions.peek().endTime;
+            int failureTime = nextFailureEvent < failureEvents.length && hasPendingJobs()
+                    ? failureEvents[nextFailureEvent][0]
+                    : Integer.MAX_VALUE;
+            int submissionTime = submissions.isEmpty() ? Integer.MAX_VALUE : submissions.peek().submitTime;
+
+            int next = Math.min(Math.min(bootTime, completionTime), Math.min(failureTime, submissionTime));
+            if (next == Integer.MAX_VALUE) {
+                if (!globalQueue.isEmpty()) {
+                    return "CHKQ";
+                }
+                return "NONE";
+            }
+            currentTime = Math.max(currentTime, next);
+
+            // Servers finishing boot-up start their queued jobs silently
+            if (bootTime == next) {
+                bootingServer.state = IDLE;
+                startJobs(bootingServer);
+                continue;
+            }
+
+            if (completionTime == next) {
+                SimJob job = completions.poll();
+                SimServer server = job.server;
+                server.runningJobs.remove(job);
+                server.availableCore += job.cores;
+                server.availableMemory += job.memory;
+                server.availableDisk += job.disk;
+                job.server = null;
+                completedJobs.add(job);
+                startJobs(server);
+                updateState(server);
+                return "JCPL " + currentTime + " " + job.id + " " + typeNames[server.type] + " " + server.id;
+            }
+
+            if (failureTime == next) {
+                int[] event = failureEvents[nextFailureEvent++];
+                SimServer server = servers[event[1]];
+                if (event[2] == 1) {
+                    if (server.state == UNAVAILABLE) {
+                        continue;
+                    }
+                    killJobs(server);
+                    endLease(server);
+                    server.state = UNAVAILABLE;
+                    server.readyTime = -1;
+                    server.failures++;
+                    server.lastFailTime = currentTime;
+                    return "RESF " + typeNames[server.type] + " " + server.id + " " + currentTime;
+                } else {
+                    if (server.state != UNAVAILABLE) {
+                        continue;
+                    }
+                    server.state = INACTIVE;
+                    server.totalFailTime += currentTime - server.lastFailTime;
+                    return "RESR " + typeNames[server.type] + " " + server.id + " " + currentTime;
+                }
+            }
+
+            SimJob job = submissions.poll();
+            currentJob = job;
+            return (job.resubmitted ? "JOBP " : "JOBN ") + job.submitTime + " " + job.id + " "
+                    + job.estRunTime + " " + job.cores + " " + job.memory + " " + job.disk;
+        }
+    }
+
+    /**
+     * Runs the remaining jobs to completion and closes all server rentals
+     */
+    protected void finish() {
+        while (!completions.isEmpty()) {
+            SimJob job = completions.poll();
+            SimServer server = job.server;
+            currentTime = Math.max(currentTime, job.endTime);
+            server.runningJobs.remove(job);
+            server.availableCore += job.cores;
+            server.availableMemory += job.memory;
+            server.availableDisk += job.disk;
+            completedJobs.add(job);
+            startJobs(server);
+            updateState(server);
+        }
+        for (SimServer server : servers) {
+            endLease(server);
+        }
+    }
+
+    /**
+     * Returns the average turnaround time of all completed jobs
+     */
+    public double getAverageTurnaroundTime() {
+        if (completedJobs.isEmpty()) {
+            return 0;
+        }
+
+        long total = 0;
+        for (SimJob job : completedJobs) {
+            total += job.endTime - job.firstSubmitTime;
+        }
+        return (double) total / completedJobs.size();
+    }
+
+    /**
+     * Returns the average waiting time of all completed jobs
+     */
+    public double getAverageWaitingTime() {
+        if (completedJobs.isEmpty()) {
+            return 0;
+        }
+
+        long total = 0;
+        for (SimJob job : completedJobs) {
+            total += job.startTime - job.firstSubmitTime;
+        }
+        return (double) total / completedJobs.size();
+    }
+
+    /**
+     * Returns the average utilisation of the servers used
+     */
+    public double getAverageUtilisation() {
+        double total = 0;
+        int count = 0;
+        for (SimServer server : servers) {
+            if (server.used && server.leasedTime > 0) {
+                total += (double) server.busyTime / server.leasedTime;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Returns the total rental cost of all servers
+     */
+    public double getTotalCost() {
+        double total = 0;
+        for (SimServer server : servers) {
+            total += server.leasedTime * typeHourlyRates[server.type] / 3600;
+        }
+        return total;
+    }
+
+    public int getCompletedJobCount() {
+        return completedJobs.size();
+    }
+
+    public int getTotalJobCount() {
+        return totalJobs;
+    }
+
+    /**
+     * Returns the number of servers that have been rented
+     */
+    public int getUsedServerCount() {
+        int usedServers = 0;
+        for (SimServer server : servers) {
+            if (server.used) {
+                usedServers++;
+            }
+        }
+        return usedServers;
+    }
+
+    /**
+     * Returns a summary of the simulation similar to the one of ds-server
+     */
+    public String getSummary() {
+        int usedServers = getUsedServerCount();
+        return String.format("# %d of %d jobs completed, %d servers used%n"
+                + "# avg util: %.2f%%, total cost: $%.2f%n"
+                + "# avg waiting time: %.2f, avg turnaround time: %.2f",
+                completedJobs.size(), totalJobs, usedServers,
+                getAverageUtilisation() * 100, getTotalCost(),
+                getAverageWaitingTime(), getAverageTurnaroundTime());
+    }
+
+    /**
+     * Serves a single client over TCP, standing in for ds-server.
+     * Usage: <code> java MockServer -c [CONFIG FILE] [-p PORT] </code>
+     */
+    public static void main(String[] args) throws Exception {
+        String configFile = null;
+        int port = 50000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-c")) {
+                configFile = args[i + 1];
+            } else if (args[i].equals("-p")) {
+                port = Integer.parseInt(args[i + 1]);
+            }
+        }
+        if (configFile == null) {
+            System.err.println("Usage: java MockServer -c [CONFIG FILE] [-p PORT]");
+            return;
+        }
+
+        MockServer server = new MockServer(new File(configFile));
+        try (ServerSocket serverSocket = new ServerSocket(port);
+                Socket socket = serverSocket.accept()) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+            socket.setTcpNoDelay(true);
+            BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            String line;
+            while (!server.isFinished() && (line = in.readLine()) != null) {
+                server.handle(line);
+                String reply;
+                while ((reply = server.poll()) != null) {
+                    out.write((reply + "\n").getBytes());
+                }
+                out.flush();
+            }
+        }
+        System.out.println(server.getSummary());
+    }
+}
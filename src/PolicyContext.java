@@ -0,0 +1,155 @@
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * <p>
+ * This class holds what a SchedulingPolicy needs besides the servers: the
+ * options of the run that change how it reads the servers, the model
+ * correcting run times, and the candidate servers it scores for a job.
+ * </p>
+ *
+ * <p>
+ * Scheduler gives each policy a context of its own with setContext(). A policy
+ * built without Scheduler has the default context, i.e. servers fetched from
+ * ds-server for each job, estimated run times as they are, and candidates
+ * scored sequentially, so it can be run and measured on its own.
+ * </p>
+ */
+public class PolicyContext {
+    // Whether the servers are the shadow state of ds-server kept by the client,
+    // whose local queues are versioned, and whether its capacity index can find
+    // the servers for first, best and worst fit, which also requires that
+    // server reliability does not matter
+    protected boolean shadowState;
+    protected boolean capacityIndex;
+
+    // Model correcting the estimated run times of jobs, or null
+    protected RuntimeModel runtimeModel;
+
+    // Servers evaluated for the current job, their scores, and the jobs of
+    // each of them. They are scored independently. In parallel mode, scoring
+    // runs on the common fork-join pool when there are at least
+    // PARALLEL_THRESHOLD candidates.
+    protected static final int PARALLEL_THRESHOLD = 32;
+    protected boolean parallelMode;
+    protected int candidateCount;
+    protected int[] candidates;
+    protected int[] scores;
+    protected JobList[] candidateJobs;
+
+    public PolicyContext() {
+        this(false, false, false, null);
+    }
+
+    /**
+     * @param shadowState   whether the servers are the shadow state of ds-server
+     * @param capacityIndex whether the capacity index of the servers can be used
+     * @param parallelMode  whether candidates are scored in parallel
+     * @param runtimeModel  model correcting the estimated run times, or null
+     */
+    public PolicyContext(boolean shadowState, boolean capacityIndex, boolean parallelMode,
+            RuntimeModel runtimeModel) {
+        this.shadowState = shadowState;
+        this.capacityIndex = capacityIndex;
+        this.parallelMode = parallelMode;
+        this.runtimeModel = runtimeModel;
+        candidates = new int[64];
+        scores = new int[64];
+        candidateJobs = new JobList[64];
+    }
+
+    /**
+     * Returns whether the servers are the shadow state of ds-server, whose
+     * versions change whenever their local queues do
+     */
+    public boolean hasShadowState() {
+        return shadowState;
+    }
+
+    /**
+     * Returns whether FF, BF and WF can find servers with the capacity index
+     * of the servers instead of scanning them
+     */
+    public boolean useCapacityIndex() {
+        return capacityIndex;
+    }
+
+    /**
+     * Returns the model correcting the estimated run times of jobs, or null
+     */
+    public RuntimeModel getRuntimeModel() {
+        return runtimeModel;
+    }
+
+    /**
+     * Forgets the candidates of the previous job
+     */
+    public void clearCandidates() {
+        candidateCount = 0;
+    }
+
+    /**
+     * Adds a server to be evaluated for the current job
+     *
+     * @param server index of the server in cluster
+     * @return index of the candidate
+     */
+    public int addCandidate(int server) {
+        if (candidateCount == candidates.length) {
+            int newLength = candidateCount * 2;
+            candidates = Arrays.copyOf(candidates, newLength);
+            scores = Arrays.copyOf(scores, newLength);
+            candidateJobs = Arrays.copyOf(candidateJobs, newLength);
+        }
+        if (candidateJobs[candidateCount] == null) {
+            candidateJobs[candidateCount] = new JobList();
+        }
+        candidates[candidateCount] = server;
+        return candidateCount++;
+    }
+
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    /**
+     * Returns the index in cluster of the server of a candidate
+     */
+    public int getCandidate(int candidate) {
+        return candidates[candidate];
+    }
+
+    /**
+     * Returns the score of a candidate given by the latest scoreCandidates()
+     */
+    public int getScore(int candidate) {
+        return scores[candidate];
+    }
+
+    /**
+     * Returns the reusable list of the jobs of a candidate, which its scorer
+     * may fill without affecting the other candidates
+     */
+    public JobList getCandidateJobs(int candidate) {
+        return candidateJobs[candidate];
+    }
+
+    /**
+     * Scores every candidate. The scorer must not modify state shared between
+     * candidates, as they may be scored in parallel. Whichever way they are
+     * scored, the scores are the same, so picking the best candidate by index
+     * keeps schedules deterministic.
+     *
+     * @param scorer function from the index of a candidate to its score
+     */
+    public void scoreCandidates(IntUnaryOperator scorer) {
+        if (parallelMode && candidateCount >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, candidateCount).parallel().forEach(i -> scores[i] = scorer.applyAsInt(i));
+        } else {
+            for (int i = 0; i < candidateCount; i++) {
+                scores[i] = scorer.applyAsInt(i);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.util.Locale;
+
+/**
+ * <p>
+ * This class keeps latency histograms of the phases of scheduling a job. A
+ * phase is timed by calling start() before it and stop() after it, which only
+ * reads the clock and increments a counter, so profiling can be left on.
+ * </p>
+ *
+ * <p>
+ * Phases may nest: the time of GETS and LSTJ exchanges includes waiting for
+ * and parsing their replies. The time of a decision excludes them, as the jobs
+ * a policy needs are listed before it decides.
+ * </p>
+ */
+public class Profiler {
+    // Phases of scheduling a job
+    public static final int WAIT = 0;
+    public static final int PARSE = 1;
+    public static final int GETS = 2;
+    public static final int LSTJ = 3;
+    public static final int DECIDE = 4;
+    public static final int SCHD = 5;
+
+    protected static final String[] PHASE_NAMES = { "wait", "parse", "gets", "lstj", "decide", "schd" };
+
+    protected Histogram[] histograms;
+
+    public Profiler() {
+        histograms = new Histogram[PHASE_NAMES.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+    }
+
+    /**
+     * Returns the start time of a phase
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records the time of a phase since its start time
+     *
+     * @param phase     the phase, e.g. Profiler.GETS
+     * @param startTime the time returned by start()
+     */
+    public void stop(int phase, long startTime) {
+        histograms[phase].record(System.nanoTime() - startTime);
+    }
+
+    /**
+     * Records a time of a phase
+     *
+     * @param phase the phase, e.g. Profiler.WAIT
+     * @param nanos the time in nanoseconds
+     */
+    public void record(int phase, long nanos) {
+        histograms[phase].record(nanos);
+    }
+
+    /**
+     * Returns the histogram of a phase
+     */
+    public Histogram getHistogram(int phase) {
+        return histograms[phase];
+    }
+
+    /**
+     * Returns the count, p50, p99 and max latency of each phase that was
+     * recorded, in microseconds
+     *
+     * @param title the title of the report, e.g. the name of the scheduler
+     */
+    public String getReport(String title) {
+        StringBuilder report = new StringBuilder();
+        report.append("# ").append(title).append('\n');
+        report.append(String.format(Locale.ROOT, "# %-8s %10s %12s %12s %12s %12s%n",
+                "phase", "count", "mean(us)", "p50(us)", "p99(us)", "max(us)"));
+        for (int i = 0; i < histograms.length; i++) {
+            Histogram histogram = histograms[i];
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            report.append(String.format(Locale.ROOT, "# %-8s %10d %12.2f %12.2f %12.2f %12.2f%n",
+                    PHASE_NAMES[i], histogram.getTotalCount(), histogram.getMean() / 1e3,
+                    histogram.getValueAtPercentile(50) / 1e3, histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getMaxValue() / 1e3));
+        }
+        return report.toString();
+    }
+}
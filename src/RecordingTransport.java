@@ -0,0 +1,97 @@
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class is a transport that records every message sent to and every
+ * byte received from ds-server, with the time in nanoseconds, to an
+ * append-only binary log in the format read by SessionLog. The log is written
+ * through a memory-mapped file, so recording costs a copy per message, and
+ * the session can be replayed without ds-server by ReplayTransport.
+ * E.g: java -Dds.record=lwt.rec Client lwt
+ */
+public class RecordingTransport implements Transport {
+    // Size of each region of the file mapped at a time
+    public static final int REGION_SIZE = 1 << 20;
+    // Space for the type, time and length of a record
+    public static final int RECORD_HEADER_SIZE = 1 + 10 + 5;
+
+    protected Transport transport;
+    protected FileChannel channel;
+    protected MappedByteBuffer region;
+    // Position in the file of the start of region
+    protected long regionStart;
+    protected long lastTime;
+
+    public RecordingTransport(Transport transport, String path) throws Exception {
+        this.transport = transport;
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        region = channel.map(FileChannel.MapMode.READ_WRITE, 0, REGION_SIZE);
+        region.put(SessionLog.MAGIC);
+        region.putLong(System.currentTimeMillis());
+        lastTime = System.nanoTime();
+    }
+
+    @Override
+    public void write(String message) throws Exception {
+        transport.write(message);
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.US_ASCII);
+        append(SessionLog.SENT, bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void flush() throws Exception {
+        transport.flush();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws Exception {
+        int count = transport.read(buffer, offset, length);
+        if (count > 0) {
+            append(SessionLog.RECEIVED, buffer, offset, count);
+        }
+        return count;
+    }
+
+    /**
+     * Appends a record to the log, mapping the next region of the file if the
+     * record does not fit in the current one
+     */
+    protected void append(int type, byte[] bytes, int offset, int length) throws Exception {
+        if (region.remaining() < RECORD_HEADER_SIZE + length) {
+            regionStart += region.position();
+            region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart,
+                    Math.max(REGION_SIZE, RECORD_HEADER_SIZE + length));
+        }
+
+        long time = System.nanoTime();
+        region.put((byte) type);
+        putVarint(region, time - lastTime);
+        putVarint(region, length);
+        region.put(bytes, offset, length);
+        lastTime = time;
+    }
+
+    protected static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    @Override
+    public void close() throws Exception {
+        // Cut the unused end of the last region
+        long length = regionStart + region.position();
+        region.force();
+        region = null;
+        channel.truncate(length);
+        channel.close();
+        transport.close();
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * This class is a transport that replays a session recorded by
+ * RecordingTransport instead of communicating with ds-server. The bytes
+ * received in the session are served at full speed, and messages sent by the
+ * client are compared with those of the session, so that a replay by an
+ * algorithm or modes other than those recorded fails at the first message
+ * that differs, instead of reading replies to other messages.
+ * E.g: java -Dds.replay=lwt.rec -Dds.profile=true Client lwt
+ */
+public class ReplayTransport implements Transport {
+    protected SessionLog log;
+    // Next record to be read and next sent record to be compared
+    protected int record;
+    protected int position;
+    protected int sentRecord;
+
+    public ReplayTransport(String path) throws Exception {
+        this(SessionLog.load(path));
+    }
+
+    public ReplayTransport(byte[] recording) {
+        this(new SessionLog(recording));
+    }
+
+    public ReplayTransport(SessionLog log) {
+        this.log = log;
+    }
+
+    @Override
+    public void write(String message) {
+        while (sentRecord < log.size() && log.getType(sentRecord) != SessionLog.SENT) {
+            sentRecord++;
+        }
+        // Raw recordings have no sent records to compare with
+        if (sentRecord == log.size()) {
+            return;
+        }
+
+        // The user name of AUTH depends on who runs the client
+        String expected = log.getText(sentRecord++);
+        expected = expected.substring(0, expected.length() - 1);
+        if (!expected.equals(message) && !(message.startsWith("AUTH ") && expected.startsWith("AUTH "))) {
+            throw new IllegalStateException(
+                    "Replay diverged from the recording: sent \"" + message + "\" instead of \"" + expected + "\"");
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        while (record < log.size() && (log.getType(record) != SessionLog.RECEIVED
+                || position == log.getLength(record))) {
+            record++;
+            position = 0;
+        }
+        if (record == log.size()) {
+            return -1;
+        }
+        int count = Math.min(length, log.getLength(record) - position);
+        System.arraycopy(log.getData(), log.getOffset(record) + position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,125 @@
+import java.util.Arrays;
+
+/**
+ * This class learns how the actual run times of jobs differ from their
+ * estimated run times, from the jobs completed so far. For each class of
+ * estimated run time, i.e. its power of two, and each server type, it keeps an
+ * exponentially weighted moving average of the ratio of actual to estimated
+ * run time. Estimates are corrected with the ratio of their class and type, or
+ * of their class over all types until the type has MIN_SAMPLES completions.
+ */
+public class RuntimeModel {
+    protected static final int CLASS_COUNT = 32;
+    protected static final int MIN_SAMPLES = 4;
+    protected static final double WEIGHT = 1.0 / 8;
+
+    // Ratio and number of completions of each class and type, at
+    // type * CLASS_COUNT + class
+    protected int typeCount;
+    protected double[] ratios;
+    protected int[] counts;
+
+    // Ratio and number of completions of each class over all types
+    protected double[] classRatios;
+    protected int[] classCounts;
+
+    // Number of completions learnt from, which changes whenever a ratio does
+    protected int version;
+
+    public RuntimeModel() {
+        ratios = new double[0];
+        counts = new int[0];
+        classRatios = new double[CLASS_COUNT];
+        classCounts = new int[CLASS_COUNT];
+    }
+
+    /**
+     * Learns from a job completion (JCPL). It must be called before the cluster
+     * handles the event, while the job is still in its shadow.
+     */
+    public void handleEvent(Message message, Cluster cluster) {
+        if (!message.is("JCPL")) {
+            return;
+        }
+
+        // E.g: JCPL 2345 12 juju 0
+        int jobID = message.getInt(2);
+        int server = cluster.indexOf(message.getString(3), message.getInt(4));
+        int startTime = cluster.getJobStartTime(jobID);
+        if (server >= 0 && startTime >= 0 && message.getInt(1) > startTime) {
+            learn(cluster.getJobEstRunTime(jobID), cluster.getType(server), message.getInt(1) - startTime);
+        }
+    }
+
+    /**
+     * Learns from the actual run time of a job
+     *
+     * @param estRunTime    estimated run time of the job
+     * @param type          type of the server that ran it
+     * @param actualRunTime time from its start to its completion
+     */
+    public void learn(int estRunTime, int type, int actualRunTime) {
+        if (estRunTime <= 0) {
+            return;
+        }
+        if (type >= typeCount) {
+            typeCount = type + 1;
+            ratios = Arrays.copyOf(ratios, typeCount * CLASS_COUNT);
+            counts = Arrays.copyOf(counts, typeCount * CLASS_COUNT);
+        }
+
+        double ratio = (double) actualRunTime / estRunTime;
+        int sizeClass = classOf(estRunTime);
+        int i = type * CLASS_COUNT + sizeClass;
+        ratios[i] = counts[i] == 0 ? ratio : ratios[i] + WEIGHT * (ratio - ratios[i]);
+        counts[i]++;
+        classRatios[sizeClass] = classCounts[sizeClass] == 0
+                ? ratio
+                : classRatios[sizeClass] + WEIGHT * (ratio - classRatios[sizeClass]);
+        classCounts[sizeClass]++;
+        version++;
+    }
+
+    /**
+     * Returns the version of the ratios, which changes whenever any of them
+     * does. A ratio of a class over all types corrects the run times on every
+     * type without enough completions of its own, so run times corrected with
+     * an older version may be stale on any server.
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the expected ratio of actual to estimated run time of a job, or 1
+     * if nothing has been learnt for its class
+     *
+     * @param estRunTime estimated run time of the job
+     * @param type       type of the server running it, or -1 if it is unknown
+     */
+    public double getRatio(int estRunTime, int type) {
+        int sizeClass = classOf(estRunTime);
+        if (type >= 0 && type < typeCount && counts[type * CLASS_COUNT + sizeClass] >= MIN_SAMPLES) {
+            return ratios[type * CLASS_COUNT + sizeClass];
+        }
+        return classCounts[sizeClass] > 0 ? classRatios[sizeClass] : 1;
+    }
+
+    /**
+     * Returns the corrected run time of a job
+     *
+     * @param estRunTime estimated run time of the job
+     * @param type       type of the server running it, or -1 if it is unknown
+     */
+    public int correct(int estRunTime, int type) {
+        return Math.max(1, (int) Math.round(estRunTime * getRatio(estRunTime, type)));
+    }
+
+    /**
+     * Returns the class of an estimated run time, i.e. the index of its highest
+     * bit
+     */
+    protected static int classOf(int estRunTime) {
+        return 31 - Integer.numberOfLeadingZeros(Math.max(estRunTime, 1));
+    }
+}
@@ -1,55 +1,1133 @@
-import java.net.InetAddress;
-import java.net.Socket;
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.InputStreamReader;
+import java.io.File;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
 
 /**
- * This class is an abstract class for the scheduling algorithm classes used in
- * the simulation
+ * This class drives the protocol with ds-server for the scheduling algorithms
+ * used in the simulation, and asks a SchedulingPolicy where to schedule each
+ * job. The policy is given a PolicyContext with the options of the run, and
+ * reads the servers from cluster, so it does not depend on the scheduler.
  */
-public abstract class Scheduler {
-    // Fields to communicate with ds-server
-    protected Socket socket;
-    protected DataOutputStream dout; // for sending messages
-    protected BufferedReader bin; // for receiving messages
+public class Scheduler {
+    // Policy choosing the server of each job, and the current job
+    protected SchedulingPolicy policy;
+    protected Job job;
+
+    // Channel to communicate with ds-server, selected with the ds.transport
+    // property: "socket" (default) or "nio" for a SocketChannel with direct buffers
+    // E.g: java -Dds.transport=nio Client bf
+    protected Transport transport;
+
+    // Address of ds-server, taken from the ds.host and ds.port properties unless
+    // set by the client
+    // E.g: java -Dds.host=127.0.0.1 -Dds.port=50001 Client bf
+    protected String host;
+    protected int port;
 
     // The latest message received from ds-server
-    // This is an array containing keywords split from the message
+    // Its keywords are accessed by index without being split into strings
     // E.g: If latest message received is "JOBN 2142 12 750 4 250 800"
-    // then latestMessage = {"JOBN", "2142", "12", "750", "4", "250", "800"}
-    protected String[] latestMessage;
+    // then message.is("JOBN") is true and message.getInt(2) = 12
+    protected Message message;
+
+    // Suffix added to the names of the files set by ds.record, ds.replay and
+    // ds.metrics, or null, so that schedulers running at the same time do not
+    // share them, e.g. the port of each server a client runs against
+    // E.g: java -Dds.record=lwt.rec Client -p 50000,50001 lwt records to
+    // lwt.50000.rec and lwt.50001.rec
+    protected String fileSuffix;
+
+    // Client-side model of the servers, updated by every GETS reply and event
+    protected Cluster cluster;
+
+    // Reusable list of the jobs of a server
+    protected JobList jobs;
+
+    // In shadow mode, GETS Capable and LSTJ are answered from the shadow state of
+    // cluster instead of querying ds-server, and the shadow is reconciled with
+    // GETS All every reconcileInterval queries.
+    // E.g: java -Dds.shadow=true -Dds.shadow.reconcile=100 Client lwt
+    protected boolean shadowMode;
+    protected int reconcileInterval;
+    protected int queriesSinceReconcile;
+
+    // In pipelined mode, command sequences whose replies are known in advance are
+    // queued and flushed in one write, and their replies are consumed in order.
+    // E.g: "GETS Capable 2 4000 16000\nOK\nOK\n" or "SCHD 2 joon 1\nREDY\n"
+    // This requires a ds-server that reads its input line by line.
+    // E.g: java -Dds.pipeline=true Client bf
+    protected boolean pipelineMode;
+
+    // Whether REDY has been queued after the last SCHD and its reply is pending
+    protected boolean readyQueued;
+
+    // In parallel mode, policies score the servers they evaluate for a job on
+    // the common fork-join pool when there are enough of them
+    // E.g: java -Dds.parallel=true Client lwt
+    protected boolean parallelMode;
+
+    // Servers whose jobs the policy needs, to be listed with LSTJ by
+    // fetchJobs() before the policy is asked to decide
+    protected int pendingCount;
+    protected int[] pendingServers;
+    protected IntConsumer jobRequest;
+
+    // In profiling mode, the time spent in each phase of scheduling a job is
+    // recorded, and the latency distributions are printed at the end of the run
+    // E.g: java -Dds.profile=true Client lwt
+    protected Profiler profiler;
+
+    // Quality of the schedule measured from events, exported as JSON at the end
+    // of the run if the ds.metrics property is set, to a file or "-" for the
+    // standard output. The hourly rates of the servers are read from the file of
+    // the ds.system property, by default ds-system.xml written by ds-server.
+    // E.g: java -Dds.metrics=lwt.json Client lwt
+    protected Metrics metrics;
+
+    // The capable servers given to the policy exclude the unavailable servers.
+    // A job the policy places on an unavailable server, or that ds-server
+    // refuses, is placed on the first available capable server instead.
+    protected IntPredicate availableServer;
 
-    public Scheduler() throws Exception {
-        socket = new Socket(InetAddress.getByName("127.0.0.1"), 50000);
-        dout = new DataOutputStream(socket.getOutputStream());
-        bin = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+    // In failure-aware mode, they also exclude the servers that have failed,
+    // unless the job is expected to end well within their mean time to
+    // failure, i.e. within failureRiskRatio of it, or no server is reliable.
+    // E.g: java -Dds.failaware=true -Dds.failaware.ratio=0.5 Client bf
+    protected boolean failureAware;
+    protected double failureRiskRatio;
+    protected IntPredicate reliableServer;
+
+    // Servers that have refused the current job, which are not tried again
+    protected int refusedCount;
+    protected int[] refusedServers;
+
+    // A job that no available server can run is held in the global queue of
+    // ds-server with ENQJ, and the held jobs are dequeued with DEQJ to be
+    // placed again when a server recovers, or at CHKQ when no other event is
+    // left. A job released at CHKQ that still cannot be placed is dropped,
+    // and so is a job refused in pipelined mode; both are counted as dropped
+    // jobs in the metrics.
+    protected int heldCount;
+    protected boolean releasedAtCheck;
+
+    // In batch mode, if the policy places batches, a job that no server can
+    // run immediately opens a batch, and the jobs submitted within batchWindow
+    // seconds of it are held in the global queue of ds-server with ENQJ. When
+    // an event past the window or CHKQ is received, they are listed with LSTQ,
+    // placed jointly by the policy and dequeued with DEQJ, and each is
+    // scheduled to its server when ds-server sends it again.
+    // E.g: java -Dds.batch=true -Dds.batch.window=60 Client bf
+    protected boolean batchMode;
+    protected int batchWindow;
+    protected int batchEndTime;
+    protected int batchCount;
+    protected JobList batch;
+    protected int[] batchServers;
+
+    // Whether the records of cluster are the usable servers of the current
+    // job, fetched to find whether it opens a batch and kept to place it
+    protected boolean usableServersFetched;
+
+    // With runtime correction, the ratio of actual to estimated run time is
+    // learnt from job completions for each class of run time and server type,
+    // and policies estimating waiting times use corrected run times
+    // E.g: java -Dds.runtime.correct=true Client lwt
+    protected RuntimeModel runtimeModel;
+
+    // In lifecycle mode, a server idle for longer than its bootup time, after
+    // which its rental while idle costs more than booting it again, is
+    // terminated with TERM, or after ds.term.idle seconds if it is set. When
+    // consolidating, a job the policy places on an idle or inactive server is
+    // placed on a server that is already running jobs instead if one can run
+    // it immediately, so the other servers stay idle and can be terminated.
+    // E.g: java -Dds.term=true -Dds.term.consolidate=true Client wf
+    protected boolean lifecycleMode;
+    protected boolean consolidating;
+    protected int idleTimeout;
+    protected int[] idleTimes; // time each server was first seen idle, or -1
+
+    // Jobs dequeued from the global queue, and the servers chosen for them
+    protected int dequeuedCount;
+    protected int[] dequeuedJobs;
+    protected int[] dequeuedServers;
+
+    public Scheduler(SchedulingPolicy policy) throws Exception {
+        host = System.getProperty("ds.host", "127.0.0.1");
+        port = Integer.getInteger("ds.port", 50000);
+        job = new Job();
+        message = new Message();
+        cluster = new Cluster();
+        jobs = new JobList();
+        shadowMode = Boolean.getBoolean("ds.shadow");
+        reconcileInterval = Integer.getInteger("ds.shadow.reconcile", 100);
+        pipelineMode = Boolean.getBoolean("ds.pipeline");
+        parallelMode = Boolean.getBoolean("ds.parallel");
+        pendingServers = new int[64];
+        jobRequest = this::requestJobs;
+        metrics = new Metrics();
+        availableServer = server -> cluster.getState(server) != Cluster.UNAVAILABLE;
+        failureAware = Boolean.getBoolean("ds.failaware");
+        failureRiskRatio = Double.parseDouble(System.getProperty("ds.failaware.ratio", "0.5"));
+        reliableServer = this::isReliable;
+        batchMode = Boolean.getBoolean("ds.batch");
+        batchWindow = Integer.getInteger("ds.batch.window", 0);
+        batch = new JobList();
+        batchServers = new int[16];
+        refusedServers = new int[16];
+        dequeuedJobs = new int[16];
+        dequeuedServers = new int[16];
+        if (Boolean.getBoolean("ds.runtime.correct")) {
+            runtimeModel = new RuntimeModel();
+        }
+        lifecycleMode = Boolean.getBoolean("ds.term");
+        consolidating = Boolean.getBoolean("ds.term.consolidate");
+        idleTimeout = Integer.getInteger("ds.term.idle", -1);
+        idleTimes = new int[0];
+        if (Boolean.getBoolean("ds.profile")) {
+            profiler = new Profiler();
+        }
+        setPolicy(policy);
     }
 
     /**
-     * Schedules jobs sent from ds-server
+     * Schedules jobs sent from ds-server, connecting to it first if no
+     * transport has been set
      */
     public void schedule() throws Exception {
+        if (transport == null) {
+            transport = openTransport(host, port);
+        }
+
+        // Start communication
+        send("HELO");
+        receive();
+        send("AUTH " + System.getProperty("user.name"));
+        receive();
+
+        do {
+            ready();
+            boolean batchDue = batchCount > 0
+                    && (message.is("CHKQ") || cluster.getCurrentTime() > batchEndTime);
+
+            // Completions, failures and recoveries have updated cluster in
+            // ready(), and are passed on to the policy
+            if (message.is("JCPL") || message.is("RESF") || message.is("RESR")) {
+                policy.handleEvent(message, cluster);
+                int target = policy.getMigrationTarget(message, cluster);
+                if (target >= 0) {
+                    migrateJobs(target);
+                }
+            } else if (message.is("JOBN") || message.is("JOBP")) {
+                // Jobs killed by a failure are resubmitted as JOBP and scheduled
+                // like new jobs
+                job.set(message);
+
+                // A job past the window of the batch starts the next batch
+                if (batchDue) {
+                    dispatchBatch();
+                    batchDue = false;
+                }
+
+                int dequeued = findDequeuedJob(job.getID());
+                if (dequeued >= 0) {
+                    int server = dequeuedServers[dequeued];
+                    removeDequeuedJob(dequeued);
+                    placeJob(server);
+                } else if (batchMode && policy.placesBatches() && (batchCount > 0 || !hasAvailableServer())) {
+                    enqueueJob();
+                } else {
+                    placeJob(-1);
+                }
+            }
+
+            if (batchDue) {
+                dispatchBatch();
+            }
+            if (heldCount > 0 && (message.is("RESR") || message.is("CHKQ"))) {
+                releasedAtCheck = message.is("CHKQ");
+                releaseHeldJobs();
+            }
+            // In pipelined mode, servers cannot be terminated while the reply
+            // of a queued REDY is pending
+            if (lifecycleMode && !readyQueued && !message.is("NONE")) {
+                terminateIdleServers();
+            }
+        } while (!message.is("NONE"));
+        metrics.finish(cluster.getCurrentTime());
+
+        // End communication
+        send("QUIT");
+        receive();
         close();
+
+        if (profiler != null) {
+            System.out.print(profiler.getReport(policy.getName()));
+        }
+        String metricsPath = getFilePath("ds.metrics");
+        if (metricsPath != null) {
+            File systemFile = new File(System.getProperty("ds.system", "ds-system.xml"));
+            if (!metrics.hasHourlyRates() && systemFile.isFile()) {
+                metrics.loadHourlyRates(systemFile);
+            }
+            metrics.export(metricsPath, policy.getName(), cluster);
+        }
+    }
+
+    /**
+     * Schedules the current job to a server chosen in advance, or to the
+     * server chosen by the policy if there is none or it cannot be used. A job
+     * that cannot be scheduled to the server is placed on another capable
+     * server, or held until a server recovers if none is available.
+     *
+     * @param server index of the server chosen in advance, or -1
+     */
+    protected void placeJob(int server) throws Exception {
+        boolean fetched = usableServersFetched;
+        usableServersFetched = false;
+        refusedCount = 0;
+        boolean usable = server >= 0 && isCapable(server)
+                && (failureAware ? isReliable(server) : cluster.getState(server) != Cluster.UNAVAILABLE);
+        if (!usable) {
+            server = -1;
+            if (!policy.usesCapableServers()) {
+                if (!cluster.isLoaded()) {
+                    loadCluster();
+                }
+                server = decide();
+            } else if ((fetched ? cluster.getRecordCount() : getUsableServers()) > 0) {
+                server = decide();
+            }
+            if (server < 0 || !isCapable(server) || cluster.getState(server) == Cluster.UNAVAILABLE) {
+                server = findUsableServer();
+            }
+        }
+        if (lifecycleMode && consolidating && server >= 0
+                && (cluster.getState(server) == Cluster.IDLE || cluster.getState(server) == Cluster.INACTIVE)) {
+            server = consolidate(server);
+        }
+
+        // Each server that refuses the job is skipped from then on, so the
+        // attempts end once every usable server has refused it. In pipelined
+        // mode, REDY has been sent with SCHD, so a refused job cannot be
+        // scheduled again and is dropped.
+        while (server >= 0) {
+            if (scheduleJob(job.getID(), server)) {
+                return;
+            }
+            if (pipelineMode) {
+                metrics.drop();
+                return;
+            }
+            if (refusedCount == refusedServers.length) {
+                refusedServers = Arrays.copyOf(refusedServers, refusedCount * 2);
+            }
+            refusedServers[refusedCount++] = server;
+            server = findUsableServer();
+        }
+        holdJob();
+    }
+
+    /**
+     * Lists the jobs the policy needs for the current job, then asks the
+     * policy to place it. Only the policy's decision is timed.
+     *
+     * @return index of the server chosen by the policy, or -1
+     */
+    protected int decide() throws Exception {
+        policy.selectJobLists(job, cluster, jobRequest);
+        fetchJobs();
+        cluster.refreshCapacityIndex();
+
+        long startTime = startPhase();
+        int server = policy.place(job, cluster);
+        endPhase(Profiler.DECIDE, startTime);
+        cluster.clearListedJobs();
+        return server;
+    }
+
+    /**
+     * Migrates the waiting jobs the policy chooses to a server with MIGJ, one
+     * at a time. Without shadow mode, the jobs of the server a job is taken
+     * from are listed first to make sure it is still waiting last, or the
+     * shadow is corrected and the policy chooses again.
+     *
+     * @param target index of the server
+     */
+    protected void migrateJobs(int target) throws Exception {
+        for (int attempt = 0; attempt < cluster.getServerCount(); attempt++) {
+            int jobID = policy.chooseMigratedJob(target, cluster);
+            if (jobID < 0) {
+                return;
+            }
+            int source = cluster.getJobServer(jobID);
+
+            if (!shadowMode) {
+                JobList sourceJobs = queryJobs(source);
+                int last = sourceJobs.size() - 1;
+                if (last < 0 || sourceJobs.getID(last) != jobID || sourceJobs.getState(last) != JobList.WAITING) {
+                    cluster.setJobs(source, sourceJobs);
+                    continue;
+                }
+            }
+
+            // E.g: "MIGJ 12 juju 0 joon 1" moves job 12 from juju 0 to joon 1
+            send("MIGJ " + jobID + " " + cluster.getServerType(source) + " " + cluster.getID(source) + " "
+                    + cluster.getServerType(target) + " " + cluster.getID(target));
+            receive();
+            if (!message.is("OK")) {
+                return;
+            }
+            cluster.migrate(jobID, target);
+        }
+    }
+
+    /**
+     * Returns the capable server with the fewest cores left among those that
+     * can run the current job immediately and are running jobs, or are idle if
+     * the given server is inactive. Returns the given server if there is none.
+     *
+     * @param server index of the idle or inactive server chosen by the policy
+     */
+    protected int consolidate(int server) throws Exception {
+        if (!policy.usesCapableServers()) {
+            getCapableServers(job.getCores(), job.getMemory(), job.getDisk());
+        }
+
+        boolean booted = cluster.getState(server) == Cluster.IDLE;
+        int bestServer = server;
+        int bestCores = Integer.MAX_VALUE;
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int candidate = cluster.getRecord(i);
+            int state = cluster.getState(candidate);
+            if ((state != Cluster.ACTIVE && (booted || state != Cluster.IDLE))
+                    || cluster.getWaitingJobs(candidate) > 0
+                    || cluster.getCores(candidate) < job.getCores()
+                    || cluster.getMemory(candidate) < job.getMemory()
+                    || cluster.getDisk(candidate) < job.getDisk()
+                    || (failureAware && !isReliable(candidate))) {
+                continue;
+            }
+            if (cluster.getCores(candidate) < bestCores) {
+                bestServer = candidate;
+                bestCores = cluster.getCores(candidate);
+            }
+        }
+        return bestServer;
+    }
+
+    /**
+     * Terminates the servers that have been idle for longer than the idle
+     * timeout, or their bootup time by default
+     */
+    protected void terminateIdleServers() throws Exception {
+        if (!cluster.isLoaded()) {
+            return;
+        }
+        int serverCount = cluster.getServerCount();
+        if (idleTimes.length < serverCount) {
+            idleTimes = new int[serverCount];
+            Arrays.fill(idleTimes, -1);
+        }
+
+        // Servers become idle only with events, so a server is idle since the
+        // first event after which it is seen idle
+        int time = cluster.getCurrentTime();
+        for (int server = 0; server < serverCount; server++) {
+            if (cluster.getState(server) != Cluster.IDLE) {
+                idleTimes[server] = -1;
+                continue;
+            }
+            if (idleTimes[server] < 0) {
+                idleTimes[server] = time;
+                continue;
+            }
+
+            int timeout = idleTimeout >= 0 ? idleTimeout : cluster.getBootupTime(cluster.getType(server));
+            if (time - idleTimes[server] < timeout) {
+                continue;
+            }
+
+            // E.g: "TERM juju 0" is replied with "0 jobs killed"
+            send("TERM " + cluster.getServerType(server) + " " + cluster.getID(server));
+            receive();
+            if (message.is("ERR:")) {
+                continue;
+            }
+            metrics.terminate(server, time);
+            cluster.terminateServer(server);
+            idleTimes[server] = -1;
+        }
+    }
+
+    /**
+     * Returns whether a capable server can run the current job immediately,
+     * like the servers of GETS Avail: it is neither booting nor unavailable,
+     * has no waiting jobs and has the resources left. It is found from the
+     * records of the usable servers, which are kept for placing the job.
+     */
+    protected boolean hasAvailableServer() throws Exception {
+        getUsableServers();
+        usableServersFetched = true;
+        for (int i = 0; i < cluster.getRecordCount(); i++) {
+            int server = cluster.getRecord(i);
+            int state = cluster.getState(server);
+            if (state != Cluster.BOOTING && cluster.getWaitingJobs(server) == 0
+                    && cluster.getCores(server) >= job.getCores() && cluster.getMemory(server) >= job.getMemory()
+                    && cluster.getDisk(server) >= job.getDisk()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Holds the current job in the global queue of ds-server until its batch
+     * is placed, or places it now if it cannot be queued
+     */
+    protected void enqueueJob() throws Exception {
+        send("ENQJ GQ");
+        receive();
+        if (!message.is("OK")) {
+            placeJob(-1);
+            return;
+        }
+        usableServersFetched = false;
+        if (batchCount == 0) {
+            batchEndTime = cluster.getCurrentTime() + batchWindow;
+        }
+        batchCount++;
+    }
+
+    /**
+     * Places the jobs held in the global queue jointly and dequeues them, so
+     * ds-server sends them again to be scheduled
+     */
+    protected void dispatchBatch() throws Exception {
+        // E.g: the record "12 2142 2150 750 4 250 800" is job 12, submitted at
+        // 2142 and queued at 2150, with estimated run time 750, requiring 4
+        // cores, 250 memory and 800 disk
+        requestData("LSTQ GQ *");
+        int jobCount = message.getInt(1);
+        batch.clear();
+        for (int i = 0; i < jobCount; i++) {
+            receive();
+            batch.add(message.getInt(0), JobList.WAITING, message.getInt(1), -1, message.getInt(3),
+                    message.getInt(4), message.getInt(5), message.getInt(6));
+        }
+        finishData();
+        batchCount = 0;
+        heldCount = 0;
+
+        // The current resources of all servers are needed, which the shadow
+        // state has in shadow mode
+        if (!shadowMode || !cluster.isLoaded()) {
+            getServers("All");
+        }
+        if (batchServers.length < jobCount) {
+            batchServers = new int[Math.max(batchServers.length * 2, jobCount)];
+        }
+        policy.selectBatchJobLists(batch, cluster, jobRequest);
+        fetchJobs();
+        cluster.refreshCapacityIndex();
+        long startTime = startPhase();
+        policy.placeBatch(batch, cluster, batchServers);
+        endPhase(Profiler.DECIDE, startTime);
+        cluster.clearListedJobs();
+
+        // Dequeue from the last job, so the queue IDs of the others do not
+        // change. In pipelined mode, the DEQJ commands are sent in one write.
+        for (int i = jobCount - 1; i >= 0; i--) {
+            if (pipelineMode) {
+                queue("DEQJ GQ " + i);
+            } else {
+                send("DEQJ GQ " + i);
+                receiveDequeued(i);
+            }
+        }
+        if (pipelineMode) {
+            transport.flush();
+            for (int i = jobCount - 1; i >= 0; i--) {
+                receiveDequeued(i);
+            }
+        }
+    }
+
+    /**
+     * Receives the reply of DEQJ for a job of the batch, and remembers its
+     * server if it has been dequeued
+     */
+    protected void receiveDequeued(int i) throws Exception {
+        receive();
+        if (!message.is("OK")) {
+            return;
+        }
+        if (dequeuedCount == dequeuedJobs.length) {
+            dequeuedJobs = Arrays.copyOf(dequeuedJobs, dequeuedCount * 2);
+            dequeuedServers = Arrays.copyOf(dequeuedServers, dequeuedCount * 2);
+        }
+        dequeuedJobs[dequeuedCount] = batch.getID(i);
+        dequeuedServers[dequeuedCount] = batchServers[i];
+        dequeuedCount++;
+    }
+
+    /**
+     * Returns the index of a job among the dequeued jobs, or -1 if it is not
+     * one of them
+     */
+    protected int findDequeuedJob(int jobID) {
+        for (int i = 0; i < dequeuedCount; i++) {
+            if (dequeuedJobs[i] == jobID) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Forgets a dequeued job once it is sent again
+     */
+    protected void removeDequeuedJob(int i) {
+        dequeuedCount--;
+        dequeuedJobs[i] = dequeuedJobs[dequeuedCount];
+        dequeuedServers[i] = dequeuedServers[dequeuedCount];
+    }
+
+    /**
+     * Returns the metrics of the schedule
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns whether a server can be trusted to run the current job, i.e. it
+     * is available, and it has not failed or the job is expected to end well
+     * within its mean time to failure
+     */
+    protected boolean isReliable(int server) {
+        if (cluster.getState(server) == Cluster.UNAVAILABLE) {
+            return false;
+        }
+        double meanTimeToFailure = cluster.getMeanTimeToFailure(server);
+        return meanTimeToFailure < 0 || job.getEstRunTime() <= failureRiskRatio * meanTimeToFailure;
+    }
+
+    /**
+     * Returns whether the type of a server has the resources the current job
+     * requires. A type whose servers have all been unavailable has unknown
+     * resources and is not capable.
+     */
+    protected boolean isCapable(int server) {
+        int type = cluster.getType(server);
+        return cluster.getTypeCores(type) >= job.getCores() && cluster.getTypeMemory(type) >= job.getMemory()
+                && cluster.getTypeDisk(type) >= job.getDisk();
+    }
+
+    /**
+     * Gets the records of the capable servers the current job can be scheduled
+     * to, i.e. the available ones, and in failure-aware mode the reliable ones
+     * unless none is reliable
+     *
+     * @return the number of records
+     */
+    protected int getUsableServers() throws Exception {
+        getCapableServers(job.getCores(), job.getMemory(), job.getDisk());
+        return cluster.retainRecords(failureAware ? reliableServer : availableServer, availableServer);
+    }
+
+    /**
+     * Returns the first capable server the current job can be scheduled to,
+     * other than the servers that have refused it, or -1 if there is none. In
+     * shadow mode, the shadow state is reconciled before giving up, as it may
+     * not know the resources of a recovered server.
+     */
+    protected int findUsableServer() throws Exception {
+        for (int pass = 0; pass < 2; pass++) {
+            getUsableServers();
+            for (int i = 0; i < cluster.getRecordCount(); i++) {
+                int server = cluster.getRecord(i);
+                if (!hasRefused(server)) {
+                    return server;
+                }
+            }
+            if (!shadowMode || !cluster.isLoaded()) {
+                break;
+            }
+            reconcile();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns whether a server has refused the current job
+     */
+    protected boolean hasRefused(int server) {
+        for (int i = 0; i < refusedCount; i++) {
+            if (refusedServers[i] == server) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Holds the current job in the global queue of ds-server until a server
+     * recovers. The job is dropped if the held jobs have been released at
+     * CHKQ, or if ds-server does not queue it.
+     */
+    protected void holdJob() throws Exception {
+        if (releasedAtCheck) {
+            metrics.drop();
+            return;
+        }
+        send("ENQJ GQ");
+        receive();
+        if (message.is("OK")) {
+            heldCount++;
+        } else {
+            metrics.drop();
+        }
+    }
+
+    /**
+     * Dequeues the held jobs, so ds-server sends them again to be placed. While
+     * a batch is open, they are placed with it instead.
+     */
+    protected void releaseHeldJobs() throws Exception {
+        if (batchCount > 0) {
+            return;
+        }
+
+        // Dequeue from the last job, so the queue IDs of the others do not
+        // change. In pipelined mode, the DEQJ commands are sent in one write.
+        for (int i = heldCount - 1; i >= 0; i--) {
+            if (pipelineMode) {
+                queue("DEQJ GQ " + i);
+            } else {
+                send("DEQJ GQ " + i);
+                receive();
+            }
+        }
+        if (pipelineMode) {
+            transport.flush();
+            for (int i = 0; i < heldCount; i++) {
+                receive();
+            }
+        }
+        heldCount = 0;
+    }
+
+    /**
+     * Sets whether idle servers are terminated and jobs are consolidated,
+     * overriding the ds.term and ds.term.consolidate properties
+     */
+    public void setLifecycleMode(boolean lifecycleMode, boolean consolidating) {
+        this.lifecycleMode = lifecycleMode;
+        this.consolidating = consolidating;
+    }
+
+    /**
+     * Sets the suffix added before the extension of the files set by
+     * properties, e.g. lwt.50000.rec for ds.record=lwt.rec and the suffix
+     * "50000", or null to use the files as they are
+     */
+    public void setFileSuffix(String fileSuffix) {
+        this.fileSuffix = fileSuffix;
+    }
+
+    /**
+     * Returns the path of the file set by a property, with the file suffix
+     * before its extension if there is one, or null if the property is not
+     * set. The standard output "-" is kept as it is.
+     *
+     * @param property the property, e.g. "ds.record"
+     */
+    protected String getFilePath(String property) {
+        String path = System.getProperty(property);
+        if (path == null || fileSuffix == null || path.equals("-")) {
+            return path;
+        }
+        int extension = path.lastIndexOf('.');
+        if (extension <= path.lastIndexOf(File.separatorChar) + 1) {
+            return path + "." + fileSuffix;
+        }
+        return path.substring(0, extension) + "." + fileSuffix + path.substring(extension);
+    }
+
+    /**
+     * Replaces the policy choosing the server of each job, and gives it a
+     * context with the options of the run. FF, BF and WF can find servers with
+     * the capacity index of cluster, which requires the shadow state and knows
+     * nothing of server reliability.
+     */
+    public void setPolicy(SchedulingPolicy policy) {
+        this.policy = policy;
+        policy.setContext(new PolicyContext(shadowMode, shadowMode && !failureAware, parallelMode, runtimeModel));
+    }
+
+    public SchedulingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the address of ds-server to connect to when scheduling starts
+     */
+    public void setAddress(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Sets the transport to communicate with ds-server, instead of connecting
+     * when scheduling starts
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Opens the transport selected with the ds.transport property, recording
+     * the session if the ds.record property is set, or replays a recorded
+     * session if the ds.replay property is set
+     */
+    protected Transport openTransport(String host, int port) throws Exception {
+        // Replay a recorded session at full speed instead of connecting
+        // E.g: java -Dds.replay=lwt.rec -Dds.profile=true Client lwt
+        String replayPath = getFilePath("ds.replay");
+        if (replayPath != null) {
+            return new ReplayTransport(replayPath);
+        }
+
+        Transport transport;
+        if (System.getProperty("ds.transport", "socket").equalsIgnoreCase("nio")) {
+            transport = new ChannelTransport(host, port);
+        } else {
+            transport = new SocketTransport(host, port);
+        }
+
+        // Record the session to be replayed by benchmarks
+        // E.g: java -Dds.record=lwt.rec Client lwt
+        String recordingPath = getFilePath("ds.record");
+        if (recordingPath != null) {
+            transport = new RecordingTransport(transport, recordingPath);
+        }
+        return transport;
     }
 
     /**
      * Closes all communication channels
      */
     protected void close() throws Exception {
-        socket.close();
-        dout.close();
-        bin.close();
+        transport.close();
+    }
+
+    /**
+     * Gets the records of all servers and adds them to cluster. This must be
+     * done before any other GETS query, as it determines the servers and their
+     * initial resources.
+     */
+    protected void loadCluster() throws Exception {
+        requestData("GETS All");
+
+        int serverCount = message.getInt(1);
+        cluster.clearRecords();
+        for (int i = 0; i < serverCount; i++) {
+            receive();
+            cluster.add(message);
+        }
+
+        // Finish receiving server records
+        finishData();
+    }
+
+    /**
+     * Gets server records with a GETS query and updates cluster with them. The
+     * servers of the reply are available from cluster.getRecord() in the order
+     * they are received.
+     *
+     * @param query the query, e.g. "Capable 2 4000 16000"
+     * @return the number of server records received
+     */
+    protected int getServers(String query) throws Exception {
+        long startTime = startPhase();
+        if (!cluster.isLoaded()) {
+            loadCluster();
+            if (query.equals("All")) {
+                endPhase(Profiler.GETS, startTime);
+                return cluster.getRecordCount();
+            }
+        }
+
+        requestData("GETS " + query);
+
+        int serverCount = message.getInt(1);
+        cluster.clearRecords();
+        for (int i = 0; i < serverCount; i++) {
+            receive();
+            cluster.update(message);
+        }
+
+        // Finish receiving server records
+        finishData();
+        endPhase(Profiler.GETS, startTime);
+        return serverCount;
+    }
+
+    /**
+     * Gets the records of the servers capable of running a job. In shadow mode,
+     * they are selected from cluster without querying ds-server.
+     *
+     * @return the number of server records
+     */
+    protected int getCapableServers(int core, int mem, int disk) throws Exception {
+        if (shadowMode && cluster.isLoaded()) {
+            if (++queriesSinceReconcile >= reconcileInterval) {
+                reconcile();
+            }
+            return cluster.selectCapable(core, mem, disk);
+        }
+        return getServers("Capable " + core + " " + mem + " " + disk);
+    }
+
+    /**
+     * Lists the jobs of a server into jobs with LSTJ
+     */
+    protected JobList queryJobs(int server) throws Exception {
+        return queryJobs(server, jobs);
+    }
+
+    /**
+     * Lists the jobs of a server into a list with LSTJ
+     */
+    protected JobList queryJobs(int server, JobList jobs) throws Exception {
+        long startTime = startPhase();
+        requestData("LSTJ " + cluster.getServerType(server) + " " + cluster.getID(server));
+
+        int jobCount = message.getInt(1);
+        jobs.clear();
+        for (int i = 0; i < jobCount; i++) {
+            receive();
+            jobs.add(message);
+        }
+
+        // Finish receiving job records
+        finishData();
+        endPhase(Profiler.LSTJ, startTime);
+        return jobs;
+    }
+
+    /**
+     * Requests the jobs of a server to be listed for the policy. In shadow
+     * mode, the policy reads them from the shadow state. Otherwise, they are
+     * listed by the next call of fetchJobs(), unless the latest GETS record of
+     * the server shows it has no jobs.
+     *
+     * @param server index of the server in cluster
+     */
+    protected void requestJobs(int server) {
+        if (shadowMode) {
+            return;
+        }
+        if (cluster.getWaitingJobs(server) + cluster.getRunningJobs(server) == 0) {
+            cluster.listJobs(server);
+            return;
+        }
+        if (pendingCount == pendingServers.length) {
+            pendingServers = Arrays.copyOf(pendingServers, pendingCount * 2);
+        }
+        pendingServers[pendingCount++] = server;
+    }
+
+    /**
+     * Lists the jobs of all requested servers with LSTJ into cluster. In
+     * pipelined mode, all LSTJ exchanges are sent in one burst and their
+     * replies are received in order.
+     */
+    protected void fetchJobs() throws Exception {
+        if (pendingCount == 0) {
+            return;
+        }
+        if (!pipelineMode) {
+            for (int i = 0; i < pendingCount; i++) {
+                int server = pendingServers[i];
+                queryJobs(server, cluster.listJobs(server));
+            }
+            pendingCount = 0;
+            return;
+        }
+
+        // The burst is timed as a single LSTJ exchange
+        long startTime = startPhase();
+        for (int i = 0; i < pendingCount; i++) {
+            int server = pendingServers[i];
+            queue("LSTJ " + cluster.getServerType(server) + " " + cluster.getID(server));
+            queue("OK");
+            queue("OK");
+        }
+        transport.flush();
+
+        for (int i = 0; i < pendingCount; i++) {
+            JobList jobs = cluster.listJobs(pendingServers[i]);
+            receive();
+            int jobCount = message.getInt(1);
+            jobs.clear();
+            for (int j = 0; j < jobCount; j++) {
+                receive();
+                jobs.add(message);
+            }
+
+            // Receive the end of the job records
+            receive();
+        }
+        pendingCount = 0;
+        endPhase(Profiler.LSTJ, startTime);
+    }
+
+    /**
+     * Corrects the shadow state of cluster with the records of GETS All, and
+     * replaces the local queues of servers whose job counts differ with LSTJ
+     */
+    protected void reconcile() throws Exception {
+        queriesSinceReconcile = 0;
+
+        long startTime = startPhase();
+        requestData("GETS All");
+
+        int serverCount = message.getInt(1);
+        int[] driftedServers = new int[serverCount];
+        int driftedCount = 0;
+        cluster.clearRecords();
+        for (int i = 0; i < serverCount; i++) {
+            receive();
+            if (!cluster.reconcile(message)) {
+                driftedServers[driftedCount++] = cluster.getRecord(i);
+            }
+        }
+
+        // Finish receiving server records
+        finishData();
+        endPhase(Profiler.GETS, startTime);
+
+        for (int i = 0; i < driftedCount; i++) {
+            cluster.setJobs(driftedServers[i], queryJobs(driftedServers[i]));
+        }
+    }
+
+    /**
+     * Sends a GETS or LSTJ command and receives its DATA reply, whose records
+     * are to be received next. In pipelined mode, both OKs of the exchange are
+     * sent with the command, otherwise only the first one.
+     *
+     * @param command the command, e.g. "GETS Capable 2 4000 16000"
+     */
+    protected void requestData(String command) throws Exception {
+        if (pipelineMode) {
+            queue(command);
+            queue("OK");
+            send("OK");
+            receive();
+        } else {
+            send(command);
+            receive();
+            send("OK");
+        }
+    }
+
+    /**
+     * Finishes a GETS or LSTJ exchange after all records are received
+     */
+    protected void finishData() throws Exception {
+        if (!pipelineMode) {
+            send("OK");
+        }
+        receive();
+    }
+
+    /**
+     * Sends REDY, receives the next event from ds-server and updates cluster
+     * with it
+     */
+    protected void ready() throws Exception {
+        if (readyQueued) {
+            readyQueued = false;
+        } else {
+            send("REDY");
+        }
+        receive();
+        metrics.handleEvent(message, cluster);
+        if (runtimeModel != null) {
+            runtimeModel.handleEvent(message, cluster);
+        }
+        cluster.handleEvent(message);
+    }
+
+    /**
+     * Schedules a job to a server and updates cluster with it
+     *
+     * @param jobID  ID of the job
+     * @param server index of the server in cluster
+     * @return whether ds-server has accepted the job
+     */
+    protected boolean scheduleJob(int jobID, int server) throws Exception {
+        long startTime = startPhase();
+
+        // In pipelined mode, the next REDY is queued with SCHD, and its reply is
+        // received by the next call of ready()
+        if (pipelineMode) {
+            queue("SCHD " + jobID + " " + cluster.getServerType(server) + " " + cluster.getID(server));
+            send("REDY");
+            readyQueued = true;
+        } else {
+            send("SCHD " + jobID + " " + cluster.getServerType(server) + " " + cluster.getID(server));
+        }
+        receive();
+        boolean scheduled = message.is("OK");
+        if (scheduled) {
+            cluster.assign(jobID, server);
+            metrics.assign(server, cluster.getCurrentTime());
+        }
+        endPhase(Profiler.SCHD, startTime);
+        return scheduled;
     }
 
     /**
-     * Receives a message from ds-server, splits it with space character
-     * as the delimiter, and stores the result in latestMessage
+     * Receives a message from ds-server and stores it in message, which splits
+     * it with space character as the delimiter
      */
     protected void receive() throws Exception {
-        String str = bin.readLine();
-        latestMessage = str.split(" ");
-        // System.out.println("RCVD: " + str);
+        if (profiler == null) {
+            message.read(transport);
+        } else {
+            // Time waiting for the message and parsing it separately
+            long startTime = profiler.start();
+            message.readLine(transport);
+            long parseStartTime = profiler.start();
+            message.parse();
+            profiler.record(Profiler.WAIT, parseStartTime - startTime);
+            profiler.stop(Profiler.PARSE, parseStartTime);
+        }
+        // System.out.println("RCVD: " + message);
+    }
+
+    /**
+     * Returns the start time of a phase in profiling mode, or 0 otherwise
+     */
+    protected long startPhase() {
+        return profiler != null ? profiler.start() : 0;
+    }
+
+    /**
+     * Records the time of a phase since its start time in profiling mode
+     *
+     * @param phase     the phase, e.g. Profiler.GETS
+     * @param startTime the time returned by startPhase()
+     */
+    protected void endPhase(int phase, long startTime) {
+        if (profiler != null) {
+            profiler.stop(phase, startTime);
+        }
     }
 
     /**
@@ -58,8 +1136,17 @@ public abstract class Scheduler {
      * @param message the message to be sent
      */
     protected void send(String message) throws Exception {
-        dout.write((message + "\n").getBytes());
-        dout.flush();
+        queue(message);
+        transport.flush();
+    }
+
+    /**
+     * Queues a message to be sent to ds-server with the next call of send()
+     *
+     * @param message the message to be queued
+     */
+    protected void queue(String message) throws Exception {
+        transport.write(message);
         // System.out.println("SENT: " + message);
     }
 }
@@ -0,0 +1,120 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * This interface is the decision part of a scheduling algorithm. It chooses a
+ * server for each job, while the protocol with ds-server is handled by
+ * Scheduler, so a policy can be run and measured without a connection. A
+ * policy reads the servers only from the ClusterView it is given and does not
+ * communicate with ds-server. The jobs of the servers it needs are requested
+ * with selectJobLists() and listed by Scheduler before place() is called. The
+ * options of the run and the scratch space shared by policies are in the
+ * PolicyContext given with setContext().
+ */
+public interface SchedulingPolicy {
+    /**
+     * Gives the policy its context, before it is asked to place any job. A
+     * policy that is not given one uses the default context.
+     */
+    default void setContext(PolicyContext context) {
+    }
+
+    /**
+     * Returns the name of the policy in reports and exported metrics
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * Chooses the server to schedule a job to
+     *
+     * @param job     the job to be scheduled
+     * @param cluster the servers. If usesCapableServers() is true, the records
+     *                of cluster are the servers capable of running the job.
+     * @return index of the server in cluster
+     */
+    int place(Job job, ClusterView cluster) throws Exception;
+
+    /**
+     * Returns whether the servers capable of running a job must be selected as
+     * the records of cluster before the job is placed
+     */
+    default boolean usesCapableServers() {
+        return true;
+    }
+
+    /**
+     * Chooses the servers whose jobs must be listed before a job is placed.
+     * Their jobs are then returned by cluster.getJobs() when place() is called.
+     *
+     * @param job     the job to be placed
+     * @param cluster the servers, as they will be given to place()
+     * @param servers receives the index of each server whose jobs are needed
+     */
+    default void selectJobLists(Job job, ClusterView cluster, IntConsumer servers) {
+    }
+
+    /**
+     * Handles a job completion (JCPL), server failure (RESF) or server
+     * recovery (RESR), after cluster has been updated with it
+     *
+     * @param message the event, e.g. "RESF juju 0 2345"
+     * @param cluster the servers
+     */
+    default void handleEvent(Message message, ClusterView cluster) throws Exception {
+    }
+
+    /**
+     * Returns the server that waiting jobs are to be migrated to after an
+     * event, e.g. a server that a job completion has left idle, or -1
+     *
+     * @param message the event, e.g. "JCPL 2345 12 juju 0"
+     * @param cluster the servers, updated with the event
+     */
+    default int getMigrationTarget(Message message, ClusterView cluster) {
+        return -1;
+    }
+
+    /**
+     * Chooses a waiting job to be migrated to a server. The job is migrated
+     * with MIGJ and cluster is updated before the next job is chosen.
+     *
+     * @param target  index of the server the job is to be migrated to
+     * @param cluster the servers
+     * @return ID of the job, or -1 if no job is to be migrated
+     */
+    default int chooseMigratedJob(int target, ClusterView cluster) {
+        return -1;
+    }
+
+    /**
+     * Returns whether the policy can place jobs submitted together as a batch
+     * with placeBatch(), so they are buffered in batch mode
+     */
+    default boolean placesBatches() {
+        return false;
+    }
+
+    /**
+     * Chooses the servers whose jobs must be listed before a batch is placed
+     *
+     * @param batch   the jobs, in the format of LSTJ records
+     * @param cluster the servers, as they will be given to placeBatch()
+     * @param servers receives the index of each server whose jobs are needed
+     */
+    default void selectBatchJobLists(JobList batch, ClusterView cluster, IntConsumer servers) {
+    }
+
+    /**
+     * Chooses the servers of a batch of jobs jointly
+     *
+     * @param batch   the jobs, in the format of LSTJ records
+     * @param cluster the servers, with their current resources
+     * @param servers receives the index of the server of each job, or -1 for
+     *                a job to be placed by place()
+     */
+    default void placeBatch(JobList batch, ClusterView cluster, int[] servers) throws Exception {
+        Arrays.fill(servers, 0, batch.size(), -1);
+    }
+}
@@ -0,0 +1,178 @@
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * This class reads a session recorded by RecordingTransport. A recording is
+ * a binary log starting with the magic bytes "DSL1" and the time it started
+ * in milliseconds since the epoch, as 8 bytes. It is followed by one record
+ * per message sent and per chunk of bytes received:
+ * </p>
+ *
+ * <code>
+ * type (1 byte: 1 sent, 2 received) | nanoseconds since the previous record
+ * or the start (varint) | length (varint) | bytes
+ * </code>
+ *
+ * <p>
+ * A type of 0 ends the log. Varints are unsigned, 7 bits per byte, least
+ * significant first. Recordings without the magic bytes are read as the raw
+ * bytes received, i.e. a single received record.
+ * </p>
+ *
+ * <code>
+ * $ java SessionLog lwt.rec
+ * </code>
+ */
+public class SessionLog {
+    public static final byte[] MAGIC = { 'D', 'S', 'L', '1' };
+    public static final int HEADER_LENGTH = MAGIC.length + 8;
+    public static final int END = 0;
+    public static final int SENT = 1;
+    public static final int RECEIVED = 2;
+
+    protected byte[] data;
+    protected long startMillis;
+
+    // Type, time since the recording started in nanoseconds, and bytes of each
+    // record, as an offset and length in data
+    protected int count;
+    protected int[] types;
+    protected long[] times;
+    protected int[] offsets;
+    protected int[] lengths;
+
+    public SessionLog(byte[] data) {
+        this.data = data;
+        types = new int[64];
+        times = new long[64];
+        offsets = new int[64];
+        lengths = new int[64];
+
+        if (data.length < HEADER_LENGTH || !Arrays.equals(data, 0, MAGIC.length, MAGIC, 0, MAGIC.length)) {
+            add(RECEIVED, 0, 0, data.length);
+            return;
+        }
+        for (int i = 0; i < 8; i++) {
+            startMillis = startMillis << 8 | (data[MAGIC.length + i] & 0xFF);
+        }
+
+        // Stop at the end marker, or at a record cut short by a crash
+        int position = HEADER_LENGTH;
+        long time = 0;
+        while (position < data.length && data[position] != END) {
+            int type = data[position++];
+            long delta = 0;
+            int shift = 0;
+            do {
+                if (position == data.length) {
+                    return;
+                }
+                delta |= (long) (data[position] & 0x7F) << shift;
+                shift += 7;
+            } while ((data[position++] & 0x80) != 0);
+            int length = 0;
+            shift = 0;
+            do {
+                if (position == data.length) {
+                    return;
+                }
+                length |= (data[position] & 0x7F) << shift;
+                shift += 7;
+            } while ((data[position++] & 0x80) != 0);
+            if (length > data.length - position) {
+                return;
+            }
+
+            time += delta;
+            add(type, time, position, length);
+            position += length;
+        }
+    }
+
+    /**
+     * Reads a recording from a file
+     */
+    public static SessionLog load(String path) throws Exception {
+        return new SessionLog(Files.readAllBytes(Paths.get(path)));
+    }
+
+    protected void add(int type, long time, int offset, int length) {
+        if (count == types.length) {
+            int newLength = count * 2;
+            types = Arrays.copyOf(types, newLength);
+            times = Arrays.copyOf(times, newLength);
+            offsets = Arrays.copyOf(offsets, newLength);
+            lengths = Arrays.copyOf(lengths, newLength);
+        }
+        types[count] = type;
+        times[count] = time;
+        offsets[count] = offset;
+        lengths[count] = length;
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the time the recording started in milliseconds since the epoch,
+     * or 0 if it is unknown
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getType(int i) {
+        return types[i];
+    }
+
+    /**
+     * Returns the time of a record in nanoseconds since the recording started
+     */
+    public long getTime(int i) {
+        return times[i];
+    }
+
+    public int getOffset(int i) {
+        return offsets[i];
+    }
+
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    public String getText(int i) {
+        return new String(data, offsets[i], lengths[i], StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Prints the records of a recording with their times in milliseconds,
+     * ">" for messages sent and "<" for bytes received
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 1) {
+            System.err.println("Usage: java SessionLog RECORDING");
+            System.exit(1);
+        }
+
+        SessionLog log = load(args[0]);
+        StringBuilder output = new StringBuilder();
+        for (int i = 0; i < log.size(); i++) {
+            String text = log.getText(i);
+            if (text.endsWith("\n")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            output.append(String.format("%12.3f %s %s%n", log.getTime(i) / 1e6,
+                    log.getType(i) == SENT ? ">" : "<", text.replace("\n", "\n" + " ".repeat(15))));
+        }
+        System.out.print(output);
+    }
+}
@@ -0,0 +1,42 @@
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * This class is the default transport, built on a blocking socket and its
+ * streams
+ */
+public class SocketTransport implements Transport {
+    protected Socket socket;
+    protected OutputStream out;
+    protected InputStream in;
+
+    public SocketTransport(String host, int port) throws Exception {
+        socket = new Socket(InetAddress.getByName(host), port);
+        socket.setTcpNoDelay(true);
+        out = new BufferedOutputStream(socket.getOutputStream());
+        in = socket.getInputStream();
+    }
+
+    @Override
+    public void write(String message) throws Exception {
+        out.write((message + "\n").getBytes());
+    }
+
+    @Override
+    public void flush() throws Exception {
+        out.flush();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws Exception {
+        return in.read(buffer, offset, length);
+    }
+
+    @Override
+    public void close() throws Exception {
+        socket.close();
+    }
+}
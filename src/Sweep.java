@@ -0,0 +1,178 @@
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>
+ * This class runs every combination of scheduling algorithms and configuration
+ * files as independent simulations against in-process servers, across all
+ * cores, and collects their results into one CSV file.
+ * </p>
+ *
+ * <code>
+ * $ java Sweep [-t THREADS] [-o OUTPUT] [-a ALGORITHM,...] [-l] [-c] [CONFIG FILE OR FOLDER]...
+ * </code>
+ *
+ * <p>
+ * By default, all algorithms are run against the configuration files in
+ * configs/other using one thread per core, and the results are written to
+ * sweep.csv.
+ * </p>
+ *
+ * <p>
+ * With -l, idle servers are terminated in every simulation, and with -c, jobs
+ * are also consolidated. Each simulation is then run again without them, and
+ * the rental cost saved and the increase of the average turnaround time are
+ * added to its results.
+ * </p>
+ *
+ * <p>
+ * Simulations run at the same time, so the files set by ds.metrics and
+ * ds.record are written once per simulation, with the algorithm and the name
+ * of the configuration before their extension, e.g. sweep.bf.config20.json for
+ * ds.metrics=sweep.json, and baseline added for runs without lifecycle
+ * management.
+ * </p>
+ */
+public class Sweep {
+    // Algorithms in the order of Client.createPolicy()
+    static final String[] ALGORITHMS = { "lrr", "fc", "ff", "bf", "wf", "lwt", "iff", "ibf", "iwf", "atl" };
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String output = "sweep.csv";
+        String[] algorithms = ALGORITHMS;
+        boolean lifecycle = false;
+        boolean consolidating = false;
+        List<File> configFiles = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-t")) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-o")) {
+                output = args[++i];
+            } else if (args[i].equals("-a")) {
+                algorithms = args[++i].split(",");
+            } else if (args[i].equals("-l")) {
+                lifecycle = true;
+            } else if (args[i].equals("-c")) {
+                lifecycle = true;
+                consolidating = true;
+            } else {
+                addConfigFiles(new File(args[i]), configFiles);
+            }
+        }
+        if (configFiles.isEmpty()) {
+            addConfigFiles(new File("configs/other"), configFiles);
+        }
+        if (configFiles.isEmpty()) {
+            System.err.println(
+                    "Usage: java Sweep [-t THREADS] [-o OUTPUT] [-a ALGORITHM,...] [-l] [-c] [CONFIG FILE OR FOLDER]...");
+            System.exit(1);
+        }
+
+        // Submit one simulation per algorithm and configuration
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<String>> results = new ArrayList<>();
+        boolean lifecycleMode = lifecycle;
+        boolean consolidatingMode = consolidating;
+        for (File configFile : configFiles) {
+            for (String algorithm : algorithms) {
+                results.add(executor.submit(() -> simulate(algorithm, configFile, lifecycleMode, consolidatingMode)));
+            }
+        }
+
+        // Collect results in the order they were submitted
+        long startTime = System.nanoTime();
+        try (PrintWriter writer = new PrintWriter(output)) {
+            writer.println("algorithm,config,completed_jobs,total_jobs,servers_used,avg_utilisation,"
+                    + "total_cost,avg_waiting_time,avg_turnaround_time,wall_ms"
+                    + (lifecycle ? ",cost_saved,turnaround_penalty" : ""));
+            for (Future<String> result : results) {
+                String row = result.get();
+                writer.println(row);
+                System.out.println(row);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        System.out.printf("# %d simulations in %.1f s, results in %s%n", results.size(),
+                (System.nanoTime() - startTime) / 1e9, output);
+    }
+
+    /**
+     * Adds a configuration file, or the configuration files in a folder,
+     * sorted by name
+     */
+    protected static void addConfigFiles(File file, List<File> configFiles) {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles((folder, name) -> name.endsWith(".xml"));
+            if (files != null) {
+                Arrays.sort(files);
+                configFiles.addAll(Arrays.asList(files));
+            }
+        } else if (file.isFile()) {
+            configFiles.add(file);
+        }
+    }
+
+    /**
+     * Runs one simulation against an in-process server, and again without
+     * lifecycle management if it is managed
+     *
+     * @return the CSV row of its results
+     */
+    protected static String simulate(String algorithm, File configFile, boolean lifecycle, boolean consolidating)
+            throws Exception {
+        long startTime = System.nanoTime();
+        String configName = configFile.getName().replaceFirst("\\.xml$", "");
+        Scheduler scheduler = Client.createScheduler(algorithm);
+        scheduler.setFileSuffix(algorithm + "." + configName);
+        if (lifecycle) {
+            scheduler.setLifecycleMode(true, consolidating);
+        }
+        MockServer server = run(scheduler, configFile);
+        long wallTime = (System.nanoTime() - startTime) / 1000000;
+
+        String row = String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%.4f,%.2f,%.2f,%.2f,%d",
+                algorithm, configFile.getName(), server.getCompletedJobCount(), server.getTotalJobCount(),
+                server.getUsedServerCount(), server.getAverageUtilisation(), server.getTotalCost(),
+                server.getAverageWaitingTime(), server.getAverageTurnaroundTime(), wallTime);
+        if (lifecycle) {
+            Scheduler baselineScheduler = Client.createScheduler(algorithm);
+            baselineScheduler.setFileSuffix(algorithm + "." + configName + ".baseline");
+            baselineScheduler.setLifecycleMode(false, false);
+            MockServer baseline = run(baselineScheduler, configFile);
+            row += String.format(Locale.ROOT, ",%.2f,%.2f", baseline.getTotalCost() - server.getTotalCost(),
+                    server.getAverageTurnaroundTime() - baseline.getAverageTurnaroundTime());
+        }
+        return row;
+    }
+
+    /**
+     * Runs a scheduler against an in-process server, recording the session to
+     * the scheduler's own file if the ds.record property is set
+     *
+     * @return the server, with the results of the simulation
+     */
+    protected static MockServer run(Scheduler scheduler, File configFile) throws Exception {
+        MockServer server = new MockServer(configFile);
+        Transport transport = new MemoryTransport(server);
+        String recordingPath = scheduler.getFilePath("ds.record");
+        if (recordingPath != null) {
+            transport = new RecordingTransport(transport, recordingPath);
+        }
+        scheduler.setTransport(transport);
+        if (scheduler.getFilePath("ds.metrics") != null) {
+            scheduler.getMetrics().loadHourlyRates(configFile);
+        }
+        scheduler.schedule();
+        return server;
+    }
+}
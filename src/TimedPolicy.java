@@ -0,0 +1,135 @@
+import java.lang.management.ManagementFactory;
+import java.util.function.IntConsumer;
+
+/**
+ * This class wraps a policy to measure the time taken and the bytes allocated
+ * by its decisions. Allocated bytes are measured with the thread allocation
+ * counter of the JVM when it is supported, and are -1 otherwise.
+ */
+public class TimedPolicy implements SchedulingPolicy {
+    protected SchedulingPolicy policy;
+    protected com.sun.management.ThreadMXBean threads;
+
+    protected long decisions;
+    protected long nanos;
+    protected long bytes;
+
+    public TimedPolicy(SchedulingPolicy policy) {
+        this.policy = policy;
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (!threads.isThreadAllocatedMemorySupported()) {
+                threads = null;
+            } else {
+                threads.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+    }
+
+    @Override
+    public void setContext(PolicyContext context) {
+        policy.setContext(context);
+    }
+
+    @Override
+    public String getName() {
+        return policy.getName();
+    }
+
+    @Override
+    public int place(Job job, ClusterView cluster) throws Exception {
+        long threadID = Thread.currentThread().getId();
+        long startBytes = threads != null ? threads.getThreadAllocatedBytes(threadID) : 0;
+        long startNanos = System.nanoTime();
+
+        int server = policy.place(job, cluster);
+
+        nanos += System.nanoTime() - startNanos;
+        if (threads != null) {
+            bytes += threads.getThreadAllocatedBytes(threadID) - startBytes;
+        }
+        decisions++;
+        return server;
+    }
+
+    @Override
+    public boolean usesCapableServers() {
+        return policy.usesCapableServers();
+    }
+
+    @Override
+    public void selectJobLists(Job job, ClusterView cluster, IntConsumer servers) {
+        policy.selectJobLists(job, cluster, servers);
+    }
+
+    @Override
+    public void handleEvent(Message message, ClusterView cluster) throws Exception {
+        policy.handleEvent(message, cluster);
+    }
+
+    @Override
+    public int getMigrationTarget(Message message, ClusterView cluster) {
+        return policy.getMigrationTarget(message, cluster);
+    }
+
+    @Override
+    public int chooseMigratedJob(int target, ClusterView cluster) {
+        return policy.chooseMigratedJob(target, cluster);
+    }
+
+    @Override
+    public boolean placesBatches() {
+        return policy.placesBatches();
+    }
+
+    @Override
+    public void selectBatchJobLists(JobList batch, ClusterView cluster, IntConsumer servers) {
+        policy.selectBatchJobLists(batch, cluster, servers);
+    }
+
+    @Override
+    public void placeBatch(JobList batch, ClusterView cluster, int[] servers) throws Exception {
+        long threadID = Thread.currentThread().getId();
+        long startBytes = threads != null ? threads.getThreadAllocatedBytes(threadID) : 0;
+        long startNanos = System.nanoTime();
+
+        policy.placeBatch(batch, cluster, servers);
+
+        nanos += System.nanoTime() - startNanos;
+        if (threads != null) {
+            bytes += threads.getThreadAllocatedBytes(threadID) - startBytes;
+        }
+        decisions += batch.size();
+    }
+
+    /**
+     * Forgets the decisions measured so far
+     */
+    public void reset() {
+        decisions = 0;
+        nanos = 0;
+        bytes = 0;
+    }
+
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Returns the average time of a decision in nanoseconds
+     */
+    public double getNanosPerDecision() {
+        return decisions > 0 ? (double) nanos / decisions : 0;
+    }
+
+    /**
+     * Returns the average bytes allocated by a decision, or -1 if allocation
+     * is not measured
+     */
+    public double getBytesPerDecision() {
+        if (threads == null) {
+            return -1;
+        }
+        return decisions > 0 ? (double) bytes / decisions : 0;
+    }
+}
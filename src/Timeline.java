@@ -0,0 +1,254 @@
+import java.util.Arrays;
+
+/**
+ * <p>
+ * This class keeps, for each server, a precomputed timeline of its local
+ * queue: the time the last waiting job is expected to start, the resources
+ * available at that time, and the expected end times of the jobs still running
+ * after it, sorted, with the resources they free cumulatively.
+ * </p>
+ *
+ * <p>
+ * Since jobs are executed in strict order, a new job cannot start before the
+ * last waiting job, and after that the available resources only grow as jobs
+ * complete. The earliest start time of a new job is therefore found with a
+ * binary search over the timeline, which is rebuilt only when the local queue
+ * of the server changes.
+ * </p>
+ */
+public class Timeline {
+    // Version of the local queue each timeline was built from, or -1 if the
+    // timeline must be rebuilt before the next query
+    protected int[] versions;
+
+    // The latest time a timeline is valid for. Running jobs that exceed their
+    // estimated run time are expected to end at the time of the query, which
+    // changes the timeline once the time passes their estimated end.
+    protected int[] validUntil;
+
+    // Time the last waiting job is expected to start and the resources
+    // available at that time
+    protected int[] lastStartTimes;
+    protected int[] availableCores;
+    protected int[] availableMemory;
+    protected int[] availableDisks;
+
+    // Expected end times of the jobs running after the last start, in ascending
+    // order, and the resources freed by the time each of them ends
+    protected int[] sizes;
+    protected int[][] endTimes;
+    protected int[][] freedCores;
+    protected int[][] freedMemory;
+    protected int[][] freedDisks;
+
+    // Running jobs by end time, used while building a timeline. Each thread has
+    // its own, so that timelines of different servers can be built in parallel.
+    protected ThreadLocal<CompletionQueue> runningJobQueues;
+
+    // Model correcting the estimated run times of jobs, or null, the type of
+    // each server, and the version of the model each timeline was built with
+    protected RuntimeModel runtimeModel;
+    protected int[] serverTypes;
+    protected int[] modelVersions;
+
+    public Timeline(int serverCount) {
+        versions = new int[serverCount];
+        validUntil = new int[serverCount];
+        lastStartTimes = new int[serverCount];
+        availableCores = new int[serverCount];
+        availableMemory = new int[serverCount];
+        availableDisks = new int[serverCount];
+        sizes = new int[serverCount];
+        endTimes = new int[serverCount][];
+        freedCores = new int[serverCount][];
+        freedMemory = new int[serverCount][];
+        freedDisks = new int[serverCount][];
+        Arrays.fill(versions, -1);
+
+        runningJobQueues = ThreadLocal.withInitial(CompletionQueue::new);
+    }
+
+    /**
+     * Corrects the estimated run times of jobs with a model when building
+     * timelines
+     *
+     * @param model   the model
+     * @param cluster the servers, whose types are used to correct run times
+     */
+    public void setRuntimeModel(RuntimeModel model, ClusterView cluster) {
+        runtimeModel = model;
+        modelVersions = new int[versions.length];
+        serverTypes = new int[versions.length];
+        for (int server = 0; server < versions.length; server++) {
+            serverTypes[server] = cluster.getType(server);
+        }
+    }
+
+    /**
+     * Returns the run time of a job expected on a server
+     */
+    protected int getRunTime(JobList jobs, int i, int server) {
+        if (runtimeModel == null) {
+            return jobs.getEstRunTime(i);
+        }
+        return runtimeModel.correct(jobs.getEstRunTime(i), serverTypes[server]);
+    }
+
+    /**
+     * Returns whether the timeline of a server can answer queries at a time.
+     * With a runtime model, the timeline must also have been built with the
+     * current version of the model, as its corrected end times change with it.
+     *
+     * @param server  index of the server
+     * @param version current version of the server's local queue
+     * @param time    time of the query
+     */
+    public boolean isValid(int server, int version, int time) {
+        return version >= 0 && versions[server] == version && time <= validUntil[server]
+                && (runtimeModel == null || modelVersions[server] == runtimeModel.getVersion());
+    }
+
+    /**
+     * Builds the timeline of a server from its jobs by simulating its local
+     * queue like ds-sim does
+     *
+     * @param server    index of the server
+     * @param version   version of the server's local queue, or -1 if it is not
+     *                  tracked
+     * @param jobs      jobs of the server, running jobs first, as listed by LSTJ
+     * @param booting   whether the server is booting
+     * @param readyTime time the server is ready if it is booting
+     * @param core      initial cores of the server
+     * @param mem       initial memory of the server
+     * @param disk      initial disk of the server
+     * @param time      current time
+     */
+    public void build(int server, int version, JobList jobs, boolean booting, int readyTime,
+            int core, int mem, int disk, int time) {
+        CompletionQueue runningJobs = runningJobQueues.get();
+        runningJobs.clear();
+        int minEndTime = Integer.MAX_VALUE;
+        int currentTime = time;
+
+        // If the server is booting, jobs start when it is ready. Otherwise, running
+        // jobs end after their estimated run time, or now if they exceeded it.
+        int firstWaiting = 0;
+        while (firstWaiting < jobs.size() && jobs.getState(firstWaiting) == JobList.RUNNING) {
+            firstWaiting++;
+        }
+        if (booting) {
+            currentTime = firstWaiting < jobs.size() ? jobs.getStartTime(firstWaiting) : readyTime;
+        } else {
+            for (int i = 0; i < firstWaiting; i++) {
+                int endTime = jobs.getStartTime(i) + getRunTime(jobs, i, server);
+                minEndTime = Math.min(minEndTime, endTime);
+                runningJobs.addUnordered(Math.max(endTime, time), jobs.getCores(i), jobs.getMemory(i),
+                        jobs.getDisk(i));
+                core -= jobs.getCores(i);
+                mem -= jobs.getMemory(i);
+                disk -= jobs.getDisk(i);
+            }
+        }
+
+        // Start waiting jobs in strict order, completing running jobs as necessary
+        for (int i = firstWaiting; i < jobs.size(); i++) {
+            while ((jobs.getCores(i) > core || jobs.getMemory(i) > mem || jobs.getDisk(i) > disk)
+                    && !runningJobs.isEmpty()) {
+                currentTime = runningJobs.peekEndTime();
+                while (!runningJobs.isEmpty() && runningJobs.peekEndTime() == currentTime) {
+                    core += runningJobs.peekCores();
+                    mem += runningJobs.peekMemory();
+                    disk += runningJobs.peekDisk();
+                    runningJobs.remove();
+                }
+            }
+            runningJobs.add(currentTime + getRunTime(jobs, i, server), jobs.getCores(i), jobs.getMemory(i),
+                    jobs.getDisk(i));
+            core -= jobs.getCores(i);
+            mem -= jobs.getMemory(i);
+            disk -= jobs.getDisk(i);
+        }
+
+        // Running jobs that end by the last start have freed their resources
+        while (!runningJobs.isEmpty() && runningJobs.peekEndTime() <= currentTime) {
+            core += runningJobs.peekCores();
+            mem += runningJobs.peekMemory();
+            disk += runningJobs.peekDisk();
+            runningJobs.remove();
+        }
+
+        versions[server] = version;
+        if (runtimeModel != null) {
+            modelVersions[server] = runtimeModel.getVersion();
+        }
+        validUntil[server] = Math.max(time, minEndTime);
+        lastStartTimes[server] = currentTime;
+        availableCores[server] = core;
+        availableMemory[server] = mem;
+        availableDisks[server] = disk;
+
+        // Drain the remaining running jobs into the sorted timeline
+        if (endTimes[server] == null || endTimes[server].length < runningJobs.size()) {
+            int length = Math.max(runningJobs.size(), 8);
+            endTimes[server] = new int[length];
+            freedCores[server] = new int[length];
+            freedMemory[server] = new int[length];
+            freedDisks[server] = new int[length];
+        }
+        int size = 0;
+        int freedCore = 0;
+        int freedMem = 0;
+        int freedDisk = 0;
+        while (!runningJobs.isEmpty()) {
+            freedCore += runningJobs.peekCores();
+            freedMem += runningJobs.peekMemory();
+            freedDisk += runningJobs.peekDisk();
+            endTimes[server][size] = runningJobs.peekEndTime();
+            freedCores[server][size] = freedCore;
+            freedMemory[server][size] = freedMem;
+            freedDisks[server][size] = freedDisk;
+            size++;
+            runningJobs.remove();
+        }
+        sizes[server] = size;
+    }
+
+    /**
+     * Returns the time the last waiting job of a server is expected to start
+     */
+    public int getLastStartTime(int server) {
+        return lastStartTimes[server];
+    }
+
+    /**
+     * Returns the earliest time a new job can start on a server, if it is added
+     * to the end of its local queue at a time, or Integer.MAX_VALUE if it never
+     * can
+     */
+    public int getStartTime(int server, int time, int core, int mem, int disk) {
+        int availableCore = availableCores[server];
+        int availableMem = availableMemory[server];
+        int availableDisk = availableDisks[server];
+        if (core <= availableCore && mem <= availableMem && disk <= availableDisk) {
+            return Math.max(lastStartTimes[server], time);
+        }
+
+        // Find the first end time after which the job fits
+        int[] cores = freedCores[server];
+        int[] memory = freedMemory[server];
+        int[] disks = freedDisks[server];
+        int low = 0;
+        int high = sizes[server];
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (core <= availableCore + cores[middle]
+                    && mem <= availableMem + memory[middle]
+                    && disk <= availableDisk + disks[middle]) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low < sizes[server] ? endTimes[server][low] : Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,31 @@
+/**
+ * This interface is the channel used by a scheduler to exchange messages with
+ * ds-server. Messages are written as lines of ASCII text, and received bytes
+ * are read into the buffer of a Message.
+ */
+public interface Transport {
+    /**
+     * Queues a message and its line ending to be sent with the next flush
+     *
+     * @param message the message to be queued
+     */
+    void write(String message) throws Exception;
+
+    /**
+     * Sends all queued messages
+     */
+    void flush() throws Exception;
+
+    /**
+     * Reads received bytes into a buffer, blocking until at least one byte is
+     * available
+     *
+     * @return the number of bytes read, or -1 if the connection is closed
+     */
+    int read(byte[] buffer, int offset, int length) throws Exception;
+
+    /**
+     * Closes the connection
+     */
+    void close() throws Exception;
+}